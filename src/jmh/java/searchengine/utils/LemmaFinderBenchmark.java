@@ -0,0 +1,103 @@
+package searchengine.utils;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Сравнение однопроходного LemmaFinder.collectLemmas с прежней реализацией
+//(toLowerCase + replaceAll + split на каждый язык)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LemmaFinderBenchmark {
+    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ARTICLE", "PREP", "CONJ"};
+    private static final String[] rusWords = {"поисковый", "движок", "обходит", "страницы", "сайтов", "индексирует",
+            "запрос", "пользователя", "леммы", "находить", "релевантные", "и", "в", "на", "для", "каталог", "товары"};
+    private static final String[] engWords = {"search", "engine", "crawls", "pages", "sites", "index", "query",
+            "user", "lemmas", "relevant", "the", "of", "and", "catalog", "products"};
+
+    @Param({"20000", "200000"})
+    public int textLength;
+
+    private LemmaFinder lemmaFinder;
+    private LuceneMorphology russianMorphology, englishMorphology;
+    private String html;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lemmaFinder = new LemmaFinder();
+        russianMorphology = new RussianLuceneMorphology();
+        englishMorphology = new EnglishLuceneMorphology();
+        html = generateHtml(textLength);
+    }
+
+    @Benchmark
+    public Map<String, Integer> singlePass() {
+        return lemmaFinder.collectLemmas(html);
+    }
+
+    @Benchmark
+    public Map<String, Integer> legacyTwoPass() {
+        Map<String, Integer> lemmas = new HashMap<>(legacyCollectLemmas(html, russianMorphology, "([^а-я\\s])"));
+        lemmas.putAll(legacyCollectLemmas(html, englishMorphology, "([^a-z\\s])"));
+        return lemmas;
+    }
+
+    private static Map<String, Integer> legacyCollectLemmas(String text, LuceneMorphology morphology, String notLetters) {
+        String[] words = text.toLowerCase(Locale.ROOT).replaceAll(notLetters, " ").trim().split("\\s+");
+        HashMap<String, Integer> lemmas = new HashMap<>();
+        for (String word : words) {
+            if (word.isBlank() || morphology.getMorphInfo(word).stream().anyMatch(LemmaFinderBenchmark::hasParticleProperty)) {
+                continue;
+            }
+            if (word.length() == 1) {
+                continue;
+            }
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (!normalForms.isEmpty()) {
+                lemmas.merge(normalForms.get(0), 1, Integer::sum);
+            }
+        }
+        return lemmas;
+    }
+
+    private static boolean hasParticleProperty(String wordBase) {
+        for (String property : particlesNames) {
+            if (wordBase.toUpperCase().contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String generateHtml(int length) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(length + 256);
+        sb.append("<html><head><title>Поиск</title><script>var x = {a: 1, items: [\"one\", \"two\"]};</script>")
+                .append("<style>.menu { color: red; }</style></head><body>");
+        while (sb.length() < length) {
+            sb.append("<div class=\"item\"><a href=\"/catalog/").append(random.nextInt(1000)).append("\">");
+            for (int i = 0; i < 12; i++) {
+                String[] words = random.nextBoolean() ? rusWords : engWords;
+                sb.append(words[random.nextInt(words.length)]).append(i % 5 == 0 ? ", " : " ");
+            }
+            sb.append("</a></div>\n");
+            if (random.nextInt(20) == 0) {
+                sb.append("<script>document.write('tracking pixel ").append(random.nextInt()).append("');</script>");
+            }
+        }
+        return sb.append("</body></html>").toString();
+    }
+}
@@ -5,6 +5,13 @@ public class Constants {
     public static final float EPS = 0.00001f;
     public static final int PROCPAGES = 70;
     public static final int SNIPPET_SYMBOLS_COUNT = 50;
-    public static final int HANDSHAKE_TIMEOUT = 150;
+    public static final int SNIPPET_FRAGMENTS = 3;
     public static final int WAIT_SECONDS = 60;
+    public static final int LEMMA_BATCH_SIZE = 500;
+    public static final int LEMMA_CACHE_SIZE = 200_000;
+    public static final int PERSIST_ATTEMPTS = 3;
+    public static final int DELETE_BATCH_SIZE = 10_000;
+    public static final int POSITIONS_BATCH_SIZE = 500;
+    public static final int SEARCH_CACHE_ENTRIES = 1_000;
+    public static final long SEARCH_CACHE_BYTES = 32L * 1024 * 1024;
 }
@@ -0,0 +1,30 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings")
+public class CrawlSettings {
+    //Общий предел одновременных скачиваний для всех сайтов
+    private int fetchWorkers = 8;
+    private int maxFetchesPerSite = 2;
+    //Ограничение частоты запросов к одному хосту (token bucket); Crawl-delay из robots.txt может его ужесточить
+    private double requestsPerSecond = 5;
+    private double burst = 5;
+    private int parseWorkers = Runtime.getRuntime().availableProcessors();
+    private int persistWorkers = 2;
+    private int queueCapacity = 64;
+    private int persistBatchSize = 16;
+    private int maxInFlightPages = 256;
+    //Как часто сохранять состояние обхода для продолжения после остановки или сбоя; 0 - только при остановке
+    private int checkpointIntervalSeconds = 60;
+    //Хранить позиции слов в index: нужны для поиска фраз и сниппетов без повторного разбора страницы
+    private boolean positionalIndex = true;
+    //Хранить сжатый исходный HTML страницы; поиску он не нужен, только заголовок и текст
+    private boolean storeHtml = true;
+}
@@ -5,7 +5,10 @@ public class Messages {
     public static final String indexingStopped = "Индексация остановлена пользователем";
     public static final String indexingInProgress = "Индексация уже запущена";
     public static final String indexingNotInProgress = "Индексация не запущена";
+    public static final String pageNotSaved = "Страница не сохранена: ";
+    public static final String pagesNotSaved = "Не сохранено страниц: ";
     public static final String indexingStoppingError = "Ошибка остановки индексации";
+    public static final String noIndexingToResume = "Нет прерванной индексации для продолжения";
     public static final String indexingPageOutsideSite = "Данная страница находится за пределами сайтов, указанных в конфигурационном файле";
     public static final String workingLemmaError = "Ошибка работы с леммами";
     public static final String emptyQuery = "Задан пустой поисковый запрос";
@@ -12,4 +12,7 @@ import org.springframework.stereotype.Component;
 public class Options {
     private String userAgent;
     private String referrer;
+    private int connectTimeout = 10_000;
+    private int readTimeout = 30_000;
+    private int maxBodySize = 2 * 1024 * 1024;
 }
@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    //Потоки для параллельного поиска по сайтам и очередь задач к ним
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 256;
+    //Сайты, не ответившие за это время, пропускаются, ответ помечается как неполный
+    private long siteTimeoutMillis = 2000;
+}
@@ -3,9 +3,11 @@ package searchengine.controllers;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.statistics.IndexingResponse;
+import searchengine.dto.statistics.MetricsResponse;
 import searchengine.dto.statistics.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
+import searchengine.services.MetricsService;
 import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
 
@@ -16,11 +18,14 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchService searchService;
+    private final MetricsService metricsService;
 
-    public ApiController(StatisticsService statisticsService, IndexingService indexingService, SearchService searchService) {
+    public ApiController(StatisticsService statisticsService, IndexingService indexingService, SearchService searchService,
+                         MetricsService metricsService) {
         this.indexingService = indexingService;
         this.statisticsService = statisticsService;
         this.searchService = searchService;
+        this.metricsService = metricsService;
     }
 
     @GetMapping("/statistics")
@@ -29,9 +34,10 @@ public class ApiController {
     }
 
     //Запуск полной индексации — GET /api/startIndexing
+    //Повторная индексация только изменившихся страниц — GET /api/startIndexing?incremental=true
     @GetMapping("/startIndexing")
-    public ResponseEntity<IndexingResponse> startIndexing() {
-        return ResponseEntity.ok(indexingService.startIndexing());
+    public ResponseEntity<IndexingResponse> startIndexing(@RequestParam(required = false, defaultValue = "false") boolean incremental) {
+        return ResponseEntity.ok(indexingService.startIndexing(incremental));
     }
 
     //Остановка текущей индексации — GET /api/stopIndexing
@@ -40,6 +46,12 @@ public class ApiController {
         return ResponseEntity.ok(indexingService.stopIndexing());
     }
 
+    //Продолжение остановленной или прерванной сбоем индексации — GET /api/resumeIndexing
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<IndexingResponse> resumeIndexing() {
+        return ResponseEntity.ok(indexingService.resumeIndexing());
+    }
+
     //Добавление или обновление отдельной страницы — POST /api/indexPage
     @PostMapping("/indexPage")
     public ResponseEntity<IndexingResponse> indexPage(@RequestParam String url) {
@@ -55,4 +67,10 @@ public class ApiController {
         return ResponseEntity.ok(searchService.search(query, site, offset, limit));
     }
 
+    //Внутренние метрики движка — GET /api/metrics
+    @GetMapping("/metrics")
+    public ResponseEntity<MetricsResponse> metrics() {
+        return ResponseEntity.ok(metricsService.getMetrics());
+    }
+
 }
@@ -0,0 +1,18 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class CrawlMetrics {
+    private int activeSites;
+    private int frontierSize;
+    private int visitedUrls;
+    private int parseQueueDepth;
+    private int persistQueueDepth;
+    private int inFlightPages;
+    private long pagesFetched;
+    private long pagesSaved;
+    private int fetchWorkers;
+    private int parseWorkers;
+    private int persistWorkers;
+}
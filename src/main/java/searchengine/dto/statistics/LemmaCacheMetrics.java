@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class LemmaCacheMetrics {
+    private int size;
+    private int capacity;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private float hitRatio;
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class MetricsResponse {
+    private boolean result;
+    private MorphologyMetrics morphology;
+    private LemmaCacheMetrics lemmaCache;
+    private CrawlMetrics crawl;
+    private SearchIndexMetrics searchIndex;
+    private SearchCacheMetrics searchCache;
+}
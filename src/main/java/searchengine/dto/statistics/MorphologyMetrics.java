@@ -0,0 +1,9 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class MorphologyMetrics {
+    private long loadTimeMillis;
+    private long memoryBytes;
+}
@@ -0,0 +1,16 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SearchCacheMetrics {
+    private int size;
+    private int capacity;
+    private long bytes;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private float hitRatio;
+}
@@ -0,0 +1,11 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SearchIndexMetrics {
+    private int loadedSites;
+    private long lemmas;
+    private long postings;
+    private long bytes;
+}
@@ -12,4 +12,6 @@ public class SearchResponse {
     private String error;
     private int offset;
     private int limit;
+    //true, если часть сайтов не успела ответить и в выдачу не попала
+    private boolean partial;
 }
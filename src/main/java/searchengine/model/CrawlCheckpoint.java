@@ -0,0 +1,39 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+//Сохраненное состояние обхода сайта: занятые адреса и еще не обработанные адреса
+@Setter
+@Getter
+@Entity
+@Table(name = "crawl_checkpoint")
+public class CrawlCheckpoint {
+
+    @Id
+    @Column(name = "site_id", nullable = false)
+    private int siteId;
+
+    @Column(name = "replaces_site_id", nullable = false)
+    private int replacesSiteId;
+
+    @Column(name = "incremental", nullable = false)
+    private boolean incremental;
+
+    //Отпечатки занятых адресов, по 8 байт
+    @Lob
+    @Column(name = "visited", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] visited;
+
+    //Адреса в очереди и в стадиях обхода, gzip
+    @Lob
+    @Column(name = "frontier", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] frontier;
+
+    @Column(name = "saved_time", nullable = false)
+    private LocalDateTime savedTime;
+
+}
@@ -26,4 +26,9 @@ public class Index {
     @Column(name = "`rank`", nullable = false)
     private float rank;
 
+    //Позиции вхождений леммы (Positions), NULL - страница проиндексирована без позиционного индекса
+    @Lob
+    @Column(name = "positions", columnDefinition = "BLOB")
+    private byte[] positions;
+
 }
@@ -23,10 +23,37 @@ public class Page {
     @Column(name = "path", nullable = false, columnDefinition = "TEXT")
     private String path;
 
+    //MD5 нормализованного пути (PagePath), уникален в пределах сайта
+    @Column(name = "path_hash", columnDefinition = "BINARY(16)")
+    private byte[] pathHash;
+
     @Column(name = "code", nullable = false)
     private int code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
+    //Исходный HTML страниц, сохраненных до выделения текста; у новых страниц NULL
+    @Column(name = "content", columnDefinition = "MEDIUMTEXT")
     private String content;
 
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    //Видимый текст страницы, по нему строятся леммы и сниппеты
+    @Column(name = "text", columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+    //Исходный HTML в gzip, если включено indexing-settings.store-html
+    @Lob
+    @Column(name = "html", columnDefinition = "MEDIUMBLOB")
+    private byte[] html;
+
+    //Валидаторы и хэш ответа для повторной индексации без полного скачивания
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    @Column(name = "content_hash")
+    private Long contentHash;
+
 }
@@ -35,4 +35,13 @@ public class Site {
     @Column(name = "name", nullable = false, columnDefinition = "VARCHAR(255)")
     private String name;
 
+    //Поколение сайта, которое строится или ждет удаления; поиск и статистика видят только рабочее (shadow = 0)
+    @Column(name = "shadow", nullable = false, columnDefinition = "BIT(1) DEFAULT 0")
+    private boolean shadow;
+
+    //Рабочее поколение обновляется на месте (инкрементальная индексация); статус при этом не меняется,
+    //и сайт остается доступен поиску
+    @Column(name = "crawling", nullable = false, columnDefinition = "BIT(1) DEFAULT 0")
+    private boolean crawling;
+
 }
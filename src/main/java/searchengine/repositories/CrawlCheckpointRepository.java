@@ -0,0 +1,39 @@
+package searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.CrawlCheckpoint;
+
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CrawlCheckpointRepository extends JpaRepository<CrawlCheckpoint, Integer> {
+
+    @Query(value = "SELECT * from crawl_checkpoint", nativeQuery = true)
+    List<CrawlCheckpoint> findAllCheckpoints();
+
+    @Modifying
+    @Query(value = "INSERT INTO crawl_checkpoint (site_id, replaces_site_id, incremental, visited, frontier, saved_time) " +
+            "VALUES(:siteId, :replacesSiteId, :incremental, :visited, :frontier, :savedTime) " +
+            "ON DUPLICATE KEY UPDATE replaces_site_id = VALUES(replaces_site_id), incremental = VALUES(incremental), " +
+            "visited = VALUES(visited), frontier = VALUES(frontier), saved_time = VALUES(saved_time)", nativeQuery = true)
+    @Transactional
+    void upsert(@Param("siteId") int siteId, @Param("replacesSiteId") int replacesSiteId, @Param("incremental") boolean incremental,
+                @Param("visited") byte[] visited, @Param("frontier") byte[] frontier, @Param("savedTime") LocalDateTime savedTime);
+
+    @Modifying
+    @Query(value = "DELETE from crawl_checkpoint where site_id = :siteId", nativeQuery = true)
+    @Transactional
+    void deleteBySiteId(@Param("siteId") int siteId);
+
+    @Modifying
+    @Query(value = "DELETE from crawl_checkpoint", nativeQuery = true)
+    @Transactional
+    void deleteAllCheckpoints();
+
+}
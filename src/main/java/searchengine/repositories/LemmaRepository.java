@@ -13,24 +13,15 @@ import java.util.List;
 @Repository
 public interface LemmaRepository extends JpaRepository<Lemma, Long> {
 
-    @Query(value = "SELECT frequency from lemma where lemma = :lemma and site_id = :siteId", nativeQuery = true)
-    int getLemmaFrequency(@Param("lemma") String lemma, @Param("siteId") int siteId);
-
     @Query(value = "SELECT * from lemma where id = :lemmaId", nativeQuery = true)
     List<Lemma> findAllContainsByLemmaId(@Param("lemmaId") int lemmaId);
 
-    @Query(value = "SELECT * from lemma where site_id = :siteId and lower(lemma) = :lemma", nativeQuery = true)
+    @Query(value = "SELECT * from lemma where site_id = :siteId and lemma = :lemma", nativeQuery = true)
     List<Lemma> findAllContains(@Param("lemma") String lemma, @Param("siteId") int siteId);
 
-    @Query(value = "SELECT id from lemma where site_id = :siteId and lower(lemma) in (:lemmas)", nativeQuery = true)
-    List<Integer> findAllContainsByLemmasSiteId (@Param("lemmas") List<String> lemmas, @Param("siteId") int siteId);
-
     @Query(value = "SELECT count(*) from lemma where site_id = :siteId", nativeQuery = true)
     int calcLemmaCountBySiteId(@Param("siteId") int siteId);
 
-    @Query(value = "SELECT count(*) from lemma where lemma = :lemma and site_id = :siteId", nativeQuery = true)
-    int calcLemmaCountByLemmaSiteId(@Param("lemma") String lemma, @Param("siteId") int siteId);
-
     @Modifying
     @Query(value = "DELETE from lemma where id = :Id", nativeQuery = true)
     @Transactional
@@ -0,0 +1,275 @@
+package searchengine.repositories;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import searchengine.config.Constants;
+import searchengine.utils.PageContent;
+import searchengine.utils.PagePath;
+import searchengine.utils.PageText;
+import searchengine.utils.Positions;
+import searchengine.utils.StoredPage;
+
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+//Работает со схемой после миграций: уникальные ключи нужны для ON DUPLICATE KEY UPDATE и точных поисков
+@Repository
+@DependsOn("schemaMigrations")
+public class PageIndexRepository {
+    private static final String FIND_PAGE = "SELECT id FROM page WHERE site_id = ? AND path_hash = ?";
+    private static final String FIND_STORED_PAGES = "SELECT id, path, etag, last_modified, content_hash FROM page WHERE site_id = ?";
+    private static final String INSERT_PAGE = "INSERT IGNORE INTO page (site_id, path, path_hash, code, title, text, html, etag, last_modified, content_hash) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_PAGE = "UPDATE page SET code = ?, content = NULL, title = ?, text = ?, html = ?, " +
+            "etag = ?, last_modified = ?, content_hash = ? WHERE id = ?";
+    private static final String FIND_PAGE_TEXTS = "SELECT id, path, title, text, IF(text IS NULL, content, NULL) content " +
+            "FROM page WHERE site_id = ? AND id IN (%s)";
+    private static final String UPSERT_LEMMA = "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+    private static final String UPSERT_INDEX = "INSERT INTO `index` (page_id, lemma_id, `rank`, positions) " +
+            "SELECT ?, id, ?, ? FROM lemma WHERE site_id = ? AND lemma = ? " +
+            "ON DUPLICATE KEY UPDATE `rank` = VALUES(`rank`), positions = VALUES(positions)";
+    private static final String FIND_PAGE_LEMMAS = "SELECT l.lemma FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id = ?";
+    //lemma читается по uk_lemma_site_lemma, index - по idx_index_lemma_page_rank в порядке индексов, без сортировки
+    private static final String FIND_POSTINGS = "SELECT l.lemma, i.page_id, i.`rank` FROM lemma l JOIN `index` i ON i.lemma_id = l.id " +
+            "WHERE l.site_id = ? AND i.`rank` > 0 ORDER BY l.lemma, i.page_id";
+    private static final String FIND_POSITIONS = "SELECT i.page_id, l.lemma, i.positions FROM lemma l " +
+            "JOIN `index` i ON i.lemma_id = l.id WHERE l.site_id = ? AND l.lemma IN (%s) AND i.page_id IN (%s)";
+    private static final String DECREMENT_FREQUENCY = "UPDATE lemma l JOIN `index` i ON i.lemma_id = l.id " +
+            "SET l.frequency = l.frequency - 1 WHERE i.page_id = ?";
+    private static final String DELETE_UNUSED_LEMMAS = "DELETE FROM lemma WHERE site_id = ? AND frequency <= 0";
+    private static final String DELETE_INDEX = "DELETE FROM `index` WHERE page_id = ?";
+    private static final String DELETE_PAGE = "DELETE FROM page WHERE id = ?";
+    private static final String DELETE_SITE_INDEX = "DELETE FROM `index` WHERE page_id IN (SELECT id FROM page WHERE site_id = ?) LIMIT ?";
+    private static final String DELETE_SITE_LEMMAS = "DELETE FROM lemma WHERE site_id = ? LIMIT ?";
+    private static final String DELETE_SITE_PAGES = "DELETE FROM page WHERE site_id = ? LIMIT ?";
+    private static final String DELETE_SITE = "DELETE FROM site WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PageIndexRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //Точный поиск страницы по хэшу нормализованного пути через уникальный индекс (site_id, path_hash)
+    public int findPageId(int siteId, String path) {
+        List<Integer> ids = jdbcTemplate.queryForList(FIND_PAGE, Integer.class, siteId, PagePath.hash(PagePath.normalize(path)));
+        return ids.isEmpty() ? Constants.NOTFOUND : ids.get(0);
+    }
+
+    public boolean pageExists(int siteId, String path) {
+        return findPageId(siteId, path) != Constants.NOTFOUND;
+    }
+
+    //Сохраненные страницы сайта по пути, для условных запросов при повторной индексации
+    public Map<String, StoredPage> findStoredPages(int siteId) {
+        Map<String, StoredPage> pages = new HashMap<>();
+        jdbcTemplate.query(FIND_STORED_PAGES, rs -> {
+            pages.put(PagePath.normalize(rs.getString("path")), new StoredPage(rs.getInt("id"), rs.getString("etag"),
+                    rs.getString("last_modified"), rs.getObject("content_hash", Long.class)));
+        }, siteId);
+        return pages;
+    }
+
+    //Возвращает id новой страницы или NOTFOUND, если страница с таким путем уже сохранена.
+    //Проверка и вставка - один оператор: страницу с тем же путем может одновременно писать другой поток
+    //или indexPage, повтор по уникальному ключу (site_id, path_hash) просто не вставляется
+    @Transactional
+    public int insertPage(int siteId, String path, int code, PageContent content,
+                          String etag, String lastModified, Long contentHash) {
+        String normalized = PagePath.normalize(path);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        int inserted = jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_PAGE, Statement.RETURN_GENERATED_KEYS);
+            ps.setInt(1, siteId);
+            ps.setString(2, normalized);
+            ps.setBytes(3, PagePath.hash(normalized));
+            ps.setInt(4, code);
+            ps.setString(5, content.title());
+            ps.setString(6, content.text());
+            ps.setBytes(7, content.html());
+            ps.setString(8, etag);
+            ps.setString(9, lastModified);
+            ps.setObject(10, contentHash);
+            return ps;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        return inserted == 0 || key == null ? Constants.NOTFOUND : key.intValue();
+    }
+
+    @Transactional
+    public void saveLemmas(int siteId, int pageId, Map<String, Integer> lemmas) {
+        saveLemmas(siteId, Map.of(pageId, lemmas));
+    }
+
+    @Transactional
+    public void saveLemmas(int siteId, int pageId, Map<String, Integer> lemmas, Map<String, Positions> positions) {
+        saveLemmas(siteId, Map.of(pageId, lemmas), positions == null ? Map.of() : Map.of(pageId, positions));
+    }
+
+    @Transactional
+    public void saveLemmas(int siteId, Map<Integer, Map<String, Integer>> lemmasByPage) {
+        saveLemmas(siteId, lemmasByPage, Map.of());
+    }
+
+    //Леммы нескольких страниц сайта и строки index пишутся одной транзакцией пакетами по LEMMA_BATCH_SIZE.
+    //Одинаковые леммы разных страниц сливаются в одну строку пакета с frequency = числу страниц.
+    //Позиции пишутся для страниц, которые есть в positionsByPage, у остальных строк index positions = NULL
+    @Transactional
+    public void saveLemmas(int siteId, Map<Integer, Map<String, Integer>> lemmasByPage,
+                           Map<Integer, Map<String, Positions>> positionsByPage) {
+        //Сортировка задает одинаковый порядок блокировок строк lemma для параллельных потоков
+        TreeMap<String, Integer> pageCounts = new TreeMap<>();
+        List<IndexRow> indexRows = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Integer>> page : new TreeMap<>(lemmasByPage).entrySet()) {
+            TreeMap<String, Integer> lemmas = new TreeMap<>();
+            for (Map.Entry<String, Integer> entry : page.getValue().entrySet()) {
+                lemmas.merge(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue(), Integer::sum);
+            }
+            Map<String, Positions> positions = positionsByPage.getOrDefault(page.getKey(), Map.of());
+            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
+                pageCounts.merge(entry.getKey(), 1, Integer::sum);
+                Positions lemmaPositions = positions.get(entry.getKey());
+                indexRows.add(new IndexRow(page.getKey(), entry.getKey(), entry.getValue(),
+                        lemmaPositions == null ? null : lemmaPositions.encode()));
+            }
+        }
+        if (pageCounts.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_LEMMA, new ArrayList<>(pageCounts.entrySet()), Constants.LEMMA_BATCH_SIZE, (ps, entry) -> {
+            ps.setInt(1, siteId);
+            ps.setString(2, entry.getKey());
+            ps.setInt(3, entry.getValue());
+        });
+        jdbcTemplate.batchUpdate(UPSERT_INDEX, indexRows, Constants.LEMMA_BATCH_SIZE, (ps, row) -> {
+            ps.setInt(1, row.pageId());
+            ps.setFloat(2, row.rank());
+            ps.setBytes(3, row.positions());
+            ps.setInt(4, siteId);
+            ps.setString(5, row.lemma());
+        });
+    }
+
+    public void updatePage(int pageId, int code, PageContent content, String etag, String lastModified, Long contentHash) {
+        jdbcTemplate.update(UPDATE_PAGE, code, content.title(), content.text(), content.html(),
+                etag, lastModified, contentHash, pageId);
+    }
+
+    //Путь, заголовок и текст страниц для выдачи одним запросом; исходный HTML читается только у старых страниц без text
+    public Map<Integer, PageText> findPageTexts(int siteId, Collection<Integer> pageIds) {
+        Map<Integer, PageText> pages = new HashMap<>();
+        if (pageIds.isEmpty()) {
+            return pages;
+        }
+        List<Object> args = new ArrayList<>(1 + pageIds.size());
+        args.add(siteId);
+        args.addAll(pageIds);
+        jdbcTemplate.query(String.format(FIND_PAGE_TEXTS, placeholders(pageIds.size())), (RowCallbackHandler) rs ->
+                pages.put(rs.getInt("id"), new PageText(rs.getString("path"), rs.getString("title"),
+                        rs.getString("text"), rs.getString("content"))), args.toArray());
+        return pages;
+    }
+
+    //Убирает вклад страницы в lemma и index; сама строка page остается. Возвращает леммы страницы
+    @Transactional
+    public List<String> deletePageLemmas(int siteId, int pageId) {
+        List<String> lemmas = jdbcTemplate.queryForList(FIND_PAGE_LEMMAS, String.class, pageId);
+        jdbcTemplate.update(DECREMENT_FREQUENCY, pageId);
+        jdbcTemplate.update(DELETE_UNUSED_LEMMAS, siteId);
+        jdbcTemplate.update(DELETE_INDEX, pageId);
+        return lemmas;
+    }
+
+    @Transactional
+    public List<String> deletePage(int siteId, int pageId) {
+        List<String> lemmas = deletePageLemmas(siteId, pageId);
+        jdbcTemplate.update(DELETE_PAGE, pageId);
+        return lemmas;
+    }
+
+    //Позиции лемм запроса на страницах сайта: pageId -> лемма -> позиции. Страницы запрашиваются пакетами
+    //по POSITIONS_BATCH_SIZE; строки, проиндексированные без позиций, не возвращаются
+    public Map<Integer, Map<String, Positions>> findPositions(int siteId, Collection<String> lemmas, Collection<Integer> pageIds) {
+        return findPositions(siteId, lemmas, pageIds, new HashSet<>());
+    }
+
+    //То же; страницы, у которых есть строки index без позиций, добавляются в withoutPositions
+    public Map<Integer, Map<String, Positions>> findPositions(int siteId, Collection<String> lemmas, Collection<Integer> pageIds,
+                                                             Set<Integer> withoutPositions) {
+        Map<Integer, Map<String, Positions>> positions = new HashMap<>();
+        if (lemmas.isEmpty() || pageIds.isEmpty()) {
+            return positions;
+        }
+        List<String> lemmaList = new ArrayList<>(lemmas);
+        List<Integer> pageList = new ArrayList<>(pageIds);
+        for (int from = 0; from < pageList.size(); from += Constants.POSITIONS_BATCH_SIZE) {
+            List<Integer> chunk = pageList.subList(from, Math.min(pageList.size(), from + Constants.POSITIONS_BATCH_SIZE));
+            String sql = String.format(FIND_POSITIONS, placeholders(lemmaList.size()), placeholders(chunk.size()));
+            List<Object> args = new ArrayList<>(1 + lemmaList.size() + chunk.size());
+            args.add(siteId);
+            args.addAll(lemmaList);
+            args.addAll(chunk);
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                byte[] bytes = rs.getBytes(3);
+                if (bytes == null) {
+                    withoutPositions.add(rs.getInt(1));
+                    return;
+                }
+                positions.computeIfAbsent(rs.getInt(1), k -> new HashMap<>()).put(rs.getString(2), Positions.decode(bytes));
+            }, args.toArray());
+        }
+        return positions;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    //Все строки index сайта по порядку лемм, внутри леммы - по page_id. Результат читается потоком, а не целиком в память
+    public void forEachPosting(int siteId, PostingConsumer consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_POSTINGS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setInt(1, siteId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1), rs.getInt(2), Math.round(rs.getFloat(3))));
+    }
+
+    public interface PostingConsumer {
+        void accept(String lemma, int pageId, int rank);
+    }
+
+    //Удаляет сайт со всеми данными короткими транзакциями по DELETE_BATCH_SIZE строк,
+    //чтобы не держать долгих блокировок, пока идут поиск и индексация других сайтов
+    public void deleteSite(int siteId) {
+        for (String delete : List.of(DELETE_SITE_INDEX, DELETE_SITE_LEMMAS, DELETE_SITE_PAGES)) {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(delete, siteId, Constants.DELETE_BATCH_SIZE);
+            } while (deleted > 0);
+        }
+        jdbcTemplate.update(DELETE_SITE, siteId);
+    }
+
+    private record IndexRow(int pageId, String lemma, int rank, byte[] positions) {
+    }
+
+}
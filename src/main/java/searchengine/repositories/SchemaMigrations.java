@@ -0,0 +1,74 @@
+package searchengine.repositories;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Версионные миграции схемы из classpath:db/migration/V<версия>__<описание>.sql. Каждая выполняется один раз,
+//примененные версии записываются в schema_version. Таблицы по сущностям создает Hibernate (ddl-auto: update),
+//поэтому миграции запускаются после него и добавляют то, чего нет в сущностях: уникальные ключи, индексы, перенос данных
+@Component
+public class SchemaMigrations {
+    private static final String LOCATION = "classpath:db/migration/V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (" +
+            "version INT NOT NULL PRIMARY KEY, description VARCHAR(255) NOT NULL, installed_on DATETIME NOT NULL)";
+    private static final String FIND_VERSIONS = "SELECT version FROM schema_version";
+    private static final String INSERT_VERSION = "INSERT INTO schema_version (version, description, installed_on) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    //EntityManagerFactory нужен только для порядка инициализации: к этому моменту Hibernate уже обновил таблицы
+    public SchemaMigrations(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() throws IOException {
+        jdbcTemplate.execute(CREATE_VERSION_TABLE);
+        Set<Integer> applied = new HashSet<>(jdbcTemplate.queryForList(FIND_VERSIONS, Integer.class));
+        TreeMap<Integer, Resource> migrations = new TreeMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            Matcher matcher = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+            if (!matcher.matches()) {
+                continue;
+            }
+            Resource duplicate = migrations.put(Integer.parseInt(matcher.group(1)), resource);
+            if (duplicate != null) {
+                throw new IllegalStateException("Duplicate schema migration version: " + resource.getFilename()
+                        + " and " + duplicate.getFilename());
+            }
+        }
+        for (Integer version : migrations.keySet()) {
+            if (applied.contains(version)) {
+                continue;
+            }
+            Resource resource = migrations.get(version);
+            Matcher matcher = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+            String description = matcher.matches() ? matcher.group(2).replace('_', ' ') : "";
+            long start = System.currentTimeMillis();
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                ScriptUtils.executeSqlScript(con, new EncodedResource(resource, StandardCharsets.UTF_8));
+                return null;
+            });
+            jdbcTemplate.update(INSERT_VERSION, version, description, LocalDateTime.now());
+            System.out.println("Schema migration V" + version + " (" + description + ") applied in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+}
@@ -17,18 +17,30 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
     @Query(value = "SELECT * from site", nativeQuery = true)
     List<Site> findAllSites();
 
-    @Query(value = "SELECT * from site where lower(url) LIKE %:url% and lower(name) LIKE %:name%", nativeQuery = true)
+    @Query(value = "SELECT * from site where url = :url and name = :name and shadow = 0", nativeQuery = true)
     List<Site> findAllContains(@Param("url") String url, @Param("name") String name);
 
     @Query(value = "SELECT * from site where id = :siteId", nativeQuery = true)
     List<Site> findAllContains(@Param("siteId") int siteId);
 
-    @Query(value = "SELECT * from site where url = :url", nativeQuery = true)
+    @Query(value = "SELECT * from site where url = :url and shadow = 0", nativeQuery = true)
     List<Site> findAllContainsByUrl(@Param("url") String url);
 
+    @Query(value = "SELECT * from site where url = :url and name = :name and shadow = 1 and status = :status ORDER BY id DESC", nativeQuery = true)
+    List<Site> findShadows(@Param("url") String url, @Param("name") String name, @Param("status") String status);
+
+    //Теневые поколения, которые уже не строятся: замененные и остановленные без сохраненного состояния обхода
+    @Query(value = "SELECT * from site where shadow = 1 and status <> 'INDEXING' " +
+            "and id NOT IN (SELECT site_id FROM crawl_checkpoint)", nativeQuery = true)
+    List<Site> findRetired();
+
     @Query(value = "SELECT count(*) from site where status = :status", nativeQuery = true)
     int getStatusCount(@Param("status") String status);
 
+    //Сайты, по которым идет обход: строящиеся (INDEXING) и обновляемые на месте
+    @Query(value = "SELECT count(*) from site where status = 'INDEXING' or crawling = 1", nativeQuery = true)
+    int getCrawlingCount();
+
     @Modifying
     @Query(value = "DELETE from site where id = :id", nativeQuery = true)
     @Transactional
@@ -39,6 +51,18 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
     @Transactional
     void insert(@Param("url") String url, @Param("name") String name, @Param("status") String status, @Param("statusTime") LocalDateTime statusTime);
 
+    @Modifying
+    @Query(value = "INSERT INTO site (url, name, status, status_time, shadow) VALUES(:url, :name, :status, :statusTime, 1)", nativeQuery = true)
+    @Transactional
+    void insertShadow(@Param("url") String url, @Param("name") String name, @Param("status") String status, @Param("statusTime") LocalDateTime statusTime);
+
+    //Одним оператором: новое поколение становится рабочим, старое уходит в тень и ждет удаления
+    @Modifying
+    @Query(value = "UPDATE site SET shadow = (id <> :newId), status = IF(id = :newId, 'INDEXED', 'FAILED'), status_time = :statusTime " +
+            "WHERE id IN (:newId, :oldId)", nativeQuery = true)
+    @Transactional
+    void swapGeneration(@Param("newId") int newId, @Param("oldId") int oldId, @Param("statusTime") LocalDateTime statusTime);
+
     @Modifying
     @Query(value = "UPDATE site SET status_time = :statusTime WHERE id = :id", nativeQuery = true)
     @Transactional
@@ -54,4 +78,9 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
     @Transactional
     void updateLastError(@Param("id") int id, @Param("lastError") String lastError);
 
+    @Modifying
+    @Query(value = "UPDATE site SET crawling = :crawling WHERE id = :id", nativeQuery = true)
+    @Transactional
+    void updateCrawling(@Param("id") int id, @Param("crawling") boolean crawling);
+
 }
@@ -3,10 +3,12 @@ package searchengine.services;
 import searchengine.dto.statistics.IndexingResponse;
 
 public interface IndexingService {
-    IndexingResponse startIndexing();
+    IndexingResponse startIndexing(boolean incremental);
 
     IndexingResponse stopIndexing();
 
+    IndexingResponse resumeIndexing();
+
     IndexingResponse indexPage(String url);
 
 }
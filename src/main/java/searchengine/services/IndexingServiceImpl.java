@@ -3,27 +3,30 @@ package searchengine.services;
 import lombok.Getter;
 import org.springframework.stereotype.Service;
 import searchengine.config.Constants;
+import searchengine.config.CrawlSettings;
 import searchengine.config.Messages;
 import searchengine.config.Options;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.IndexingResponse;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageIndexRepository;
 import searchengine.repositories.SiteRepository;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
-import org.jsoup.Connection.Response;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import searchengine.utils.ForkJoinParser;
+import searchengine.utils.CrawlCheckpointer;
+import searchengine.utils.CrawlPipeline;
+import searchengine.utils.FetchedPage;
+import searchengine.utils.GenerationCollector;
 import searchengine.utils.LemmaFinder;
+import searchengine.utils.PageContent;
+import searchengine.utils.PageFetcher;
+import searchengine.utils.Positions;
+import searchengine.utils.SearchIndex;
+import searchengine.utils.StoredPage;
 
 @Service
 @Getter
@@ -32,39 +35,32 @@ public class IndexingServiceImpl implements IndexingService {
     private final SitesList sites;
     private final Options options;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private volatile HashMap<Integer, ForkJoinPool> indexingPools = new HashMap<>();
-    private final LemmaFinder lemmaFinderRus, lemmaFinderEng;
+    private final PageIndexRepository pageIndexRepository;
+    private final LemmaFinder lemmaFinder;
+    private final PageFetcher pageFetcher;
+    private final CrawlPipeline crawlPipeline;
+    private final GenerationCollector generationCollector;
+    private final CrawlCheckpointer checkpointer;
+    private final SearchIndex searchIndex;
+    private final CrawlSettings crawlSettings;
 
 
     public IndexingServiceImpl(SitesList sites, Options options, SiteRepository siteRepository,
-                               PageRepository pageRepository, LemmaRepository lemmaRepository,
-                               IndexRepository indexRepository) throws IOException {
+                               PageIndexRepository pageIndexRepository,
+                               LemmaFinder lemmaFinder, PageFetcher pageFetcher,
+                               CrawlPipeline crawlPipeline, GenerationCollector generationCollector,
+                               CrawlCheckpointer checkpointer, SearchIndex searchIndex, CrawlSettings crawlSettings) {
         this.sites = sites;
         this.options = options;
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
-        lemmaFinderRus = LemmaFinder.getInstanceRus();
-        lemmaFinderEng = LemmaFinder.getInstanceEng();
-    }
-
-    public void clearTables() {
-        for (searchengine.config.Site site : sites.getSites()) {
-            int sId = siteRepository.findAllContains(site.getUrl().toLowerCase(), site.getName().toLowerCase()).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
-            if (sId == Constants.NOTFOUND) {
-                continue;
-            }
-            lemmaRepository.deleteBySiteId(sId);
-            for (Page page : pageRepository.findAllContains(sId)) {
-                indexRepository.deleteByPageId(page.getId());
-            }
-            pageRepository.deleteBySiteId(sId);
-            siteRepository.deleteById(sId);
-        }
+        this.pageIndexRepository = pageIndexRepository;
+        this.lemmaFinder = lemmaFinder;
+        this.pageFetcher = pageFetcher;
+        this.crawlPipeline = crawlPipeline;
+        this.generationCollector = generationCollector;
+        this.checkpointer = checkpointer;
+        this.searchIndex = searchIndex;
+        this.crawlSettings = crawlSettings;
     }
 
     public IndexingResponse setIndexingResult(boolean flag, String err) {
@@ -80,37 +76,60 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     @Override
-    public IndexingResponse startIndexing() {
-        if (siteRepository.getStatusCount(Status.INDEXING.toString()) > 0) {
+    public IndexingResponse startIndexing(boolean incremental) {
+        if (siteRepository.getCrawlingCount() > 0) {
             return setIndexingResult(false, Messages.indexingInProgress);
         }
 
-        indexingPools.clear();
-        clearTables();
+        //Новый запуск отменяет продолжение прежнего: его состояние и брошенные теневые поколения удаляются
+        checkpointer.deleteAll();
+        generationCollector.collect();
+
+        if (incremental) {
+            return startIncrementalIndexing();
+        }
 
+        //Уже проиндексированный сайт строится заново в теневом поколении, старые данные остаются доступны поиску
         for (searchengine.config.Site site : sites.getSites()) {
-            siteRepository.insert(site.getUrl().toLowerCase(), site.getName().toLowerCase(), Status.INDEXING.toString(), LocalDateTime.now());
+            String url = site.getUrl().toLowerCase();
+            String name = site.getName().toLowerCase();
+            int liveId = siteRepository.findAllContains(url, name).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
+            if (liveId == Constants.NOTFOUND) {
+                siteRepository.insert(url, name, Status.INDEXING.toString(), LocalDateTime.now());
+                int sId = siteRepository.findAllContains(url, name).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
+                if (sId != Constants.NOTFOUND) {
+                    crawlPipeline.start(sId, site.getName(), site.getUrl(), site.getWeight());
+                }
+                continue;
+            }
+            siteRepository.insertShadow(url, name, Status.INDEXING.toString(), LocalDateTime.now());
+            int sId = siteRepository.findShadows(url, name, Status.INDEXING.toString()).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
+            if (sId != Constants.NOTFOUND) {
+                crawlPipeline.startShadow(sId, liveId, site.getName(), site.getUrl(), site.getWeight());
+            }
         }
 
+        return setIndexingResult(true, "");
+    }
+
+    //Сайты, уже бывшие в индексе, не очищаются: неизменившиеся страницы пропускаются,
+    //измененные и исчезнувшие переиндексируются. Новые сайты индексируются полностью.
+    //Уже проиндексированный сайт остается INDEXED и доступен поиску, обход отмечается признаком crawling
+    public IndexingResponse startIncrementalIndexing() {
         for (searchengine.config.Site site : sites.getSites()) {
             int sId = siteRepository.findAllContains(site.getUrl().toLowerCase(), site.getName().toLowerCase()).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
             if (sId == Constants.NOTFOUND) {
-                continue;
+                siteRepository.insert(site.getUrl().toLowerCase(), site.getName().toLowerCase(), Status.INDEXING.toString(), LocalDateTime.now());
+                sId = siteRepository.findAllContains(site.getUrl().toLowerCase(), site.getName().toLowerCase()).stream().findFirst().map(Site::getId).orElse(Constants.NOTFOUND);
+                if (sId == Constants.NOTFOUND) {
+                    continue;
+                }
+            } else {
+                siteRepository.updateCrawling(sId, true);
+                siteRepository.updateLastError(sId, null);
+                siteRepository.updateStatusTime(sId, LocalDateTime.now());
             }
-            Thread thread =
-                    new Thread(() -> {
-                        ForkJoinParser parserFJ = new ForkJoinParser(site.getUrl(), sId, this,
-                                indexRepository, lemmaRepository, siteRepository, pageRepository);
-                        ForkJoinPool pool = new ForkJoinPool();
-                        getIndexingPools().put(sId, pool);
-                        pool.invoke(parserFJ);
-                        List<String> listFJ = new ArrayList<>(parserFJ.join());
-                        System.out.println("Amount indexed pages = " + listFJ.size() + ". Site name = " + site.getName());
-
-                        siteRepository.updateStatusTime(sId, LocalDateTime.now());
-                        siteRepository.updateStatus(sId, Status.INDEXED.toString());
-                    });
-            thread.start();
+            crawlPipeline.start(sId, site.getName(), site.getUrl(), site.getWeight(), pageIndexRepository.findStoredPages(sId));
         }
 
         return setIndexingResult(true, "");
@@ -118,62 +137,72 @@ public class IndexingServiceImpl implements IndexingService {
 
     @Override
     public IndexingResponse stopIndexing() {
-        if (siteRepository.getStatusCount(Status.INDEXING.toString()) == 0) {
+        if (siteRepository.getCrawlingCount() == 0) {
             return setIndexingResult(false, Messages.indexingNotInProgress);
         }
 
-        if (indexingPools.size() != siteRepository.getStatusCount(Status.INDEXING.toString())) {
-            System.out.println("ForkJoinPool not synchronized with count of indexing sites. Waiting " + Constants.WAIT_SECONDS + " seconds ...");
-            try {
-                Thread.sleep(Constants.WAIT_SECONDS * 1000);
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
-            if (indexingPools.size() != siteRepository.getStatusCount(Status.INDEXING.toString())) {
+        try {
+            if (!crawlPipeline.stopAll(Constants.WAIT_SECONDS, TimeUnit.SECONDS)) {
                 return setIndexingResult(false, Messages.indexingStoppingError);
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return setIndexingResult(false, Messages.indexingStoppingError);
         }
 
-        Iterator<Map.Entry<Integer, ForkJoinPool>> iterator = indexingPools.entrySet().iterator();
-        int i = indexingPools.size();
-        while (iterator.hasNext()) {
-            Map.Entry<Integer, ForkJoinPool> entry = iterator.next();
-            Status status = Status.NOTFOUND;
-            for (Site site : siteRepository.findAllContains(entry.getKey())) {
-                status = site.getStatus();
-                break;
+        //Сайты, оставшиеся в статусе INDEXING или с признаком crawling без активного обхода,
+        //например после перезапуска приложения
+        for (Site site : siteRepository.findAllSites()) {
+            if (site.getStatus() == Status.INDEXING) {
+                setSuccessfulIndexStoppingStatus(site.getId());
+                siteRepository.updateStatusTime(site.getId(), LocalDateTime.now());
+            } else if (site.isCrawling()) {
+                siteRepository.updateCrawling(site.getId(), false);
+                siteRepository.updateLastError(site.getId(), Messages.indexingStopped);
+                siteRepository.updateStatusTime(site.getId(), LocalDateTime.now());
             }
-            if (!(entry.getValue() != null && status == Status.INDEXING)) {
+        }
+        generationCollector.collect();
+
+        return setIndexingResult(true, "");
+    }
+
+    //Сайты с сохраненным состоянием обхода продолжают индексироваться с места остановки или последнего сохранения.
+    //Допускается и после перезапуска приложения, когда сайты остались в статусе INDEXING без активного обхода
+    @Override
+    public IndexingResponse resumeIndexing() {
+        if (!crawlPipeline.getActiveCrawls().isEmpty()) {
+            return setIndexingResult(false, Messages.indexingInProgress);
+        }
+
+        int resumed = 0;
+        for (CrawlCheckpoint checkpoint : checkpointer.findAll()) {
+            Site siteDb = siteRepository.findAllContains(checkpoint.getSiteId()).stream().findFirst().orElse(null);
+            searchengine.config.Site site = siteDb == null ? null : sites.getSites().stream()
+                    .filter(s -> s.getUrl().equalsIgnoreCase(siteDb.getUrl())).findFirst().orElse(null);
+            if (site == null) {
+                checkpointer.delete(checkpoint.getSiteId());
                 continue;
             }
-            entry.getValue().shutdown();
-            try {
-                if (!entry.getValue().awaitTermination(Constants.WAIT_SECONDS, TimeUnit.SECONDS)) {
-                    entry.getValue().shutdownNow();
-                    if (!entry.getValue().awaitTermination(Constants.WAIT_SECONDS, TimeUnit.SECONDS)) {
-                        System.err.println("Pool (siteId == " + entry.getKey() + ") did not terminate");
-                    } else {
-                        setSuccessfulIndexStoppingStatus(entry.getKey());
-                        iterator.remove();
-                        i--;
-                    }
-                } else {
-                    setSuccessfulIndexStoppingStatus(entry.getKey());
-                    iterator.remove();
-                    i--;
-                }
-            } catch (InterruptedException ex) {
-                entry.getValue().shutdownNow();
-                Thread.currentThread().interrupt();
+            int sId = siteDb.getId();
+            if (checkpoint.isIncremental()) {
+                siteRepository.updateCrawling(sId, true);
+            } else {
+                siteRepository.updateStatus(sId, Status.INDEXING.toString());
             }
-            siteRepository.updateStatusTime(entry.getKey(), LocalDateTime.now());
+            siteRepository.updateLastError(sId, null);
+            siteRepository.updateStatusTime(sId, LocalDateTime.now());
+            Map<String, StoredPage> storedPages = checkpoint.isIncremental() ? pageIndexRepository.findStoredPages(sId) : Map.of();
+            crawlPipeline.resume(sId, site.getName(), site.getUrl(), site.getWeight(), storedPages, checkpoint.getReplacesSiteId(),
+                    CrawlCheckpointer.decodeVisited(checkpoint.getVisited()),
+                    CrawlCheckpointer.decodeFrontier(checkpoint.getFrontier()));
+            resumed++;
         }
-
-        if (i == 0) {
-            indexingPools.clear();
-            return setIndexingResult(true, "");
+        if (resumed == 0) {
+            return setIndexingResult(false, Messages.noIndexingToResume);
         }
-        return setIndexingResult(false, Messages.indexingStoppingError);
+
+        return setIndexingResult(true, "");
     }
 
     @Override
@@ -209,95 +238,57 @@ public class IndexingServiceImpl implements IndexingService {
         return setIndexingResult(true, "");
     }
 
-    public void deletePage(int pageId) {
-        List<Integer> lemmaIds = new ArrayList<>();
-        for (Index index : indexRepository.findAllContains(pageId)) {
-            lemmaIds.add(index.getLemmaId());
-        }
-        indexRepository.deleteByPageId(pageId);
-        for (int lemmaId : lemmaIds) {
-            int freq = lemmaRepository.findAllContainsByLemmaId(lemmaId).stream().findFirst().map(Lemma::getFrequency).orElse(Constants.NOTFOUND);
-            if (freq == 1) {
-                lemmaRepository.deleteById(lemmaId);
-                continue;
-            }
-            if (freq != Constants.NOTFOUND) {
-                lemmaRepository.updateFrequency(lemmaId, freq - 1);
-            }
-        }
-        pageRepository.deleteById(pageId);
-    }
-
     public boolean indexPageTreatment(String url, int siteId, String pageUrl) {
         Document doc;
-        int pageId = pageRepository.findAllContains(pageUrl.toLowerCase(), siteId).stream().findFirst().map(Page::getId).orElse(Constants.NOTFOUND);
+        int pageId = pageIndexRepository.findPageId(siteId, pageUrl);
 
         if (pageId != Constants.NOTFOUND) {
-            deletePage(pageId);
+            searchIndex.removePage(siteId, pageId, pageIndexRepository.deletePage(siteId, pageId));
         }
         url = removeLastSymbol(url, '/').toLowerCase();
 
         siteRepository.updateStatusTime(siteId, LocalDateTime.now());
-        Response response = getPageResponse(url);
-        if (response == null) {
-            System.out.println("Error getPageResponse() for " + url);
+        FetchedPage page = pageFetcher.fetch(url, false);
+        if (page == null) {
+            System.out.println("Error fetch() for " + url);
             return false;
         }
-        doc = getHtmlCode(response, url, siteId, pageUrl);
+        doc = getHtmlCode(page, siteId, pageUrl);
         if (doc == null) {
             System.out.println("Error getHtmlCode() for " + url);
             return false;
         }
 
-        pageId = pageRepository.findAllContains(pageUrl.toLowerCase(), siteId).stream().findFirst().map(Page::getId).orElse(Constants.NOTFOUND);
-        String text = doc.outerHtml();
-
-        Map<String, Integer> lemmas = new HashMap<>(lemmaFinderRus.collectLemmas(text, Language.RUS));
-        Map<String, Integer> lemmasEng = new HashMap<>(lemmaFinderEng.collectLemmas(text, Language.ENG));
-        lemmas.putAll(lemmasEng);
+        pageId = pageIndexRepository.findPageId(siteId, pageUrl);
+        String text = PageContent.extractText(doc);
 
-        for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-            int lId = lemmaRepository.findAllContains(entry.getKey().toLowerCase(), siteId).stream().findFirst().map(Lemma::getId).orElse(Constants.NOTFOUND);
-            if (lId == Constants.NOTFOUND) {
-                lemmaRepository.insert(siteId, entry.getKey().toLowerCase(), 1);
-                lId = lemmaRepository.findAllContains(entry.getKey().toLowerCase(), siteId).stream().findFirst().map(Lemma::getId).orElse(Constants.NOTFOUND);
-            }
-            float rank = indexRepository.findAllContains(pageId, lId).stream().findFirst().map(Index::getRank).orElse(0.0f);
-            if (rank <= Constants.EPS) {
-                indexRepository.insert(pageId, lId, entry.getValue());
-                continue;
-            }
-            rank += entry.getValue();
-            indexRepository.updateRank(pageId, lId, rank);
+        Map<String, Positions> positions = null;
+        Map<String, Integer> lemmas;
+        if (crawlSettings.isPositionalIndex()) {
+            positions = lemmaFinder.collectLemmaPositions(text);
+            lemmas = Positions.counts(positions);
+        } else {
+            lemmas = lemmaFinder.collectLemmas(text);
         }
 
+        pageIndexRepository.saveLemmas(siteId, pageId, lemmas, positions);
+        searchIndex.addPages(siteId, Map.of(pageId, lemmas));
+
         return true;
     }
 
-    public Document getHtmlCode(Response response, String url, int siteId, String path) {
-        int code = response.statusCode();
-
-        if (code >= 400) {
-            siteRepository.updateLastError(siteId, code + ' ' + response.statusMessage());
+    public Document getHtmlCode(FetchedPage page, int siteId, String path) {
+        if (page.isError()) {
+            siteRepository.updateLastError(siteId, page.getCode() + " " + page.getStatusMessage());
             return null;
         }
 
-        Document document;
-        try {
-            document = Jsoup.connect(url).userAgent(getOptions().getUserAgent())
-                    .followRedirects(false)
-                    .referrer(getOptions().getReferrer()).get();
-            int pageId = pageRepository.findAllContains(path.toLowerCase(), siteId).stream().findFirst().map(Page::getId).orElse(Constants.NOTFOUND);
-            if (pageId == Constants.NOTFOUND) {
-                pageRepository.insert(siteId, path.toLowerCase(), code, document.outerHtml());
-            } else {
-                document = null;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            document = null;
+        if (pageIndexRepository.pageExists(siteId, path)) {
+            return null;
         }
-
+        Document document = page.parse();
+        pageIndexRepository.insertPage(siteId, path.toLowerCase(), page.getCode(), PageContent.of(document, crawlSettings.isStoreHtml()),
+                page.getEtag(), page.getLastModified(), page.contentHash());
         return document;
     }
 
@@ -311,16 +302,4 @@ public class IndexingServiceImpl implements IndexingService {
         return str;
     }
 
-    public Response getPageResponse(String url) {
-        try {
-            return Jsoup.connect(url).userAgent(getOptions().getUserAgent())
-                    .followRedirects(false)
-                    .referrer(getOptions().getReferrer())
-                    .execute();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
 }
@@ -0,0 +1,7 @@
+package searchengine.services;
+
+import searchengine.dto.statistics.MetricsResponse;
+
+public interface MetricsService {
+    MetricsResponse getMetrics();
+}
@@ -0,0 +1,86 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.config.CrawlSettings;
+import searchengine.dto.statistics.CrawlMetrics;
+import searchengine.dto.statistics.LemmaCacheMetrics;
+import searchengine.dto.statistics.MetricsResponse;
+import searchengine.dto.statistics.MorphologyMetrics;
+import searchengine.dto.statistics.SearchCacheMetrics;
+import searchengine.dto.statistics.SearchIndexMetrics;
+import searchengine.utils.CrawlPipeline;
+import searchengine.utils.LemmaCache;
+import searchengine.utils.LemmaFinder;
+import searchengine.utils.SearchIndex;
+import searchengine.utils.SearchResultCache;
+import searchengine.utils.SiteIndex;
+
+@Service
+@RequiredArgsConstructor
+public class MetricsServiceImpl implements MetricsService {
+    private final LemmaFinder lemmaFinder;
+    private final CrawlPipeline crawlPipeline;
+    private final CrawlSettings crawlSettings;
+    private final SearchIndex searchIndex;
+    private final SearchResultCache searchResultCache;
+
+    @Override
+    public MetricsResponse getMetrics() {
+        MorphologyMetrics morphology = new MorphologyMetrics();
+        morphology.setLoadTimeMillis(lemmaFinder.getLoadTimeMillis());
+        morphology.setMemoryBytes(lemmaFinder.getMemoryBytes());
+
+        LemmaCache cache = lemmaFinder.getLemmaCache();
+        LemmaCacheMetrics lemmaCache = new LemmaCacheMetrics();
+        lemmaCache.setSize(cache.getSize());
+        lemmaCache.setCapacity(cache.getCapacity());
+        lemmaCache.setHits(cache.getHits());
+        lemmaCache.setMisses(cache.getMisses());
+        lemmaCache.setEvictions(cache.getEvictions());
+        long lookups = cache.getHits() + cache.getMisses();
+        lemmaCache.setHitRatio(lookups == 0 ? 0 : (float) cache.getHits() / lookups);
+
+        CrawlMetrics crawl = new CrawlMetrics();
+        crawl.setActiveSites(crawlPipeline.getActiveCrawls().size());
+        crawl.setFrontierSize(crawlPipeline.getFrontierSize());
+        crawl.setVisitedUrls(crawlPipeline.getVisitedUrls());
+        crawl.setParseQueueDepth(crawlPipeline.getParseQueueDepth());
+        crawl.setPersistQueueDepth(crawlPipeline.getPersistQueueDepth());
+        crawl.setInFlightPages(crawlPipeline.getInFlightPages());
+        crawl.setPagesFetched(crawlPipeline.getPagesFetched());
+        crawl.setPagesSaved(crawlPipeline.getPagesSaved());
+        crawl.setFetchWorkers(crawlSettings.getFetchWorkers());
+        crawl.setParseWorkers(crawlSettings.getParseWorkers());
+        crawl.setPersistWorkers(crawlSettings.getPersistWorkers());
+
+        SearchIndexMetrics index = new SearchIndexMetrics();
+        index.setLoadedSites(searchIndex.getSites().size());
+        for (SiteIndex site : searchIndex.getSites().values()) {
+            index.setLemmas(index.getLemmas() + site.getLemmaCount());
+            index.setPostings(index.getPostings() + site.getPostingCount());
+            index.setBytes(index.getBytes() + site.getBytes());
+        }
+
+        SearchCacheMetrics searchCache = new SearchCacheMetrics();
+        searchCache.setSize(searchResultCache.getSize());
+        searchCache.setCapacity(searchResultCache.getCapacity());
+        searchCache.setBytes(searchResultCache.getBytes());
+        searchCache.setMaxBytes(searchResultCache.getMaxBytes());
+        searchCache.setHits(searchResultCache.getHits());
+        searchCache.setMisses(searchResultCache.getMisses());
+        searchCache.setEvictions(searchResultCache.getEvictions());
+        searchCache.setInvalidations(searchResultCache.getInvalidations());
+        long searches = searchResultCache.getHits() + searchResultCache.getMisses();
+        searchCache.setHitRatio(searches == 0 ? 0 : (float) searchResultCache.getHits() / searches);
+
+        MetricsResponse response = new MetricsResponse();
+        response.setMorphology(morphology);
+        response.setLemmaCache(lemmaCache);
+        response.setCrawl(crawl);
+        response.setSearchIndex(index);
+        response.setSearchCache(searchCache);
+        response.setResult(true);
+        return response;
+    }
+}
@@ -1,50 +1,75 @@
 package searchengine.services;
 
 import lombok.Getter;
+import org.jsoup.Jsoup;
 import org.springframework.stereotype.Service;
 import searchengine.config.Constants;
+import searchengine.config.CrawlSettings;
 import searchengine.config.Messages;
+import searchengine.config.SearchSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.statistics.DataSearchItem;
 import searchengine.dto.statistics.SearchResponse;
-import searchengine.model.Language;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
 import searchengine.model.Status;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
-import searchengine.repositories.PageRepository;
+import searchengine.repositories.PageIndexRepository;
 import searchengine.repositories.SiteRepository;
 import searchengine.utils.LemmaFinder;
+import searchengine.utils.PageContent;
+import searchengine.utils.PageText;
+import searchengine.utils.PhraseQuery;
+import searchengine.utils.Positions;
+import searchengine.utils.SearchIndex;
+import searchengine.utils.SearchResultCache;
+import searchengine.utils.SiteIndex;
+import searchengine.utils.SnippetBuilder;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
 @Getter
 
 public class SearchServiceImpl implements SearchService {
-    private final IndexingServiceImpl indexingService;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final PageIndexRepository pageIndexRepository;
     private final SitesList sites;
-    private final LemmaFinder lemmaFinderRus, lemmaFinderEng;
+    private final LemmaFinder lemmaFinder;
+    private final SearchIndex searchIndex;
+    private final SearchResultCache searchResultCache;
+    private final SnippetBuilder snippetBuilder;
+    private final SearchSettings searchSettings;
+    private final CrawlSettings crawlSettings;
+    private final ExecutorService searchExecutor;
 
-    public SearchServiceImpl(IndexingServiceImpl indexingService, SitesList sites,
-                             SiteRepository siteRepository, PageRepository pageRepository,
-                             LemmaRepository lemmaRepository, IndexRepository indexRepository) throws IOException {
-        this.indexingService = indexingService;
+    public SearchServiceImpl(SitesList sites, SiteRepository siteRepository,
+                             PageIndexRepository pageIndexRepository, LemmaFinder lemmaFinder, SearchIndex searchIndex, SearchResultCache searchResultCache,
+                             SnippetBuilder snippetBuilder, SearchSettings searchSettings,
+                             CrawlSettings crawlSettings) {
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
+        this.pageIndexRepository = pageIndexRepository;
         this.sites = sites;
-        lemmaFinderRus = LemmaFinder.getInstanceRus();
-        lemmaFinderEng = LemmaFinder.getInstanceEng();
+        this.lemmaFinder = lemmaFinder;
+        this.searchIndex = searchIndex;
+        this.searchResultCache = searchResultCache;
+        this.snippetBuilder = snippetBuilder;
+        this.searchSettings = searchSettings;
+        this.crawlSettings = crawlSettings;
+        AtomicInteger number = new AtomicInteger();
+        searchExecutor = new ThreadPoolExecutor(searchSettings.getThreads(), searchSettings.getThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(searchSettings.getQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "search-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
     }
 
     public String checkParamVerify(String query, String url) {
@@ -65,27 +90,15 @@ public class SearchServiceImpl implements SearchService {
         return "";
     }
 
-    public LinkedHashMap<String, Integer> sortedLemmaFreqMapForming(String query, int sId) {
-        Map<String, Integer> lemmaFreqMap = new HashMap<>(lemmaFinderRus.collectLemmas(query, Language.RUS));
-        Map<String, Integer> lemmaFreqMapEng = new HashMap<>(lemmaFinderEng.collectLemmas(query, Language.ENG));
-        lemmaFreqMap.putAll(lemmaFreqMapEng);
+    //Частоты всех лемм запроса берутся из словаря индекса сайта в памяти за одно обращение
+    public LinkedHashMap<String, Integer> sortedLemmaFreqMapForming(Set<String> queryLemmas, int sId) {
+        Map<String, Integer> lemmaFreqMap = searchIndex.site(sId).frequencies(queryLemmas);
         int cntPgs = 0;
-        Iterator<Map.Entry<String, Integer>> iterator01 = lemmaFreqMap.entrySet().iterator();
-        while (iterator01.hasNext()) {
-            Map.Entry<String, Integer> entry = iterator01.next();
-            int cntFreqLemma;
-            String strTmp = entry.getKey().toLowerCase(Locale.ROOT);
-            if (lemmaRepository.calcLemmaCountByLemmaSiteId(strTmp, sId) == 0) {
-                cntFreqLemma = 0;
-            } else {
-                cntFreqLemma = lemmaRepository.getLemmaFrequency(strTmp, sId);
-            }
-            if (cntFreqLemma != 0) {
-                cntPgs += cntFreqLemma;
-            } else {
+        for (int cntFreqLemma : lemmaFreqMap.values()) {
+            if (cntFreqLemma == 0) {
                 return null;
             }
-            lemmaFreqMap.put(entry.getKey(), cntFreqLemma);
+            cntPgs += cntFreqLemma;
         }
         if (cntPgs == 0) {
             return null;
@@ -109,52 +122,74 @@ public class SearchServiceImpl implements SearchService {
                                 LinkedHashMap::new));
     }
 
-    public LinkedHashMap<Integer, Float> sortedDescPageIdRankRelForming(int sId, LinkedHashMap<String, Integer> sortedLemmaFreqMap) {
-        List<Integer> pageIds = new ArrayList<>();
-        for (Page page : pageRepository.findAllContains(sId)) {
-            pageIds.add(page.getId());
+    //Число всех совпавших страниц сайта и topK самых релевантных из них по убыванию абсолютной релевантности.
+    //Абсолютная релевантность сравнима между сайтами, относительная считается после слияния выдачи
+    public RankedPages sortedDescPageIdRankAbsForming(int sId, LinkedHashMap<String, Integer> sortedLemmaFreqMap,
+                                                      List<PhraseQuery> phrases, int topK) {
+        //Пересечение списков страниц лемм в индексе сайта в памяти, от редких лемм к частым
+        //Абсолютная релевантность считается при пересечении
+        SiteIndex.Matches matches = searchIndex.site(sId).match(new ArrayList<>(sortedLemmaFreqMap.keySet()));
+        if (!phrases.isEmpty() && matches.size() > 0) {
+            matches = filterPhrases(sId, matches, phrases);
         }
-        for (Map.Entry<String, Integer> entry : sortedLemmaFreqMap.entrySet()) {
-            int lemmaId = -1;
-            for (Lemma lemmaTable : lemmaRepository.findAllContains(entry.getKey().toLowerCase(), sId)) {
-                lemmaId = lemmaTable.getId();
-                break;
-            }
-            pageIds = indexRepository.findAllPages(lemmaId, pageIds);
-            if (pageIds.isEmpty()) {
-                return null;
-            }
+        if (matches.size() == 0) {
+            return null;
         }
 
-        List<String> lemmas = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : sortedLemmaFreqMap.entrySet()) {
-            lemmas.add(entry.getKey());
+        int[] top = matches.top(topK);
+        int[] pageIds = new int[top.length];
+        int[] ranks = new int[top.length];
+        for (int i = 0; i < top.length; i++) {
+            pageIds[i] = matches.pageIds()[top[i]];
+            ranks[i] = matches.ranks()[top[i]];
         }
-        List<Integer> lemmaIds = lemmaRepository.findAllContainsByLemmasSiteId(lemmas, sId);
-        if (lemmaIds.isEmpty()) {
+        return new RankedPages(matches.size(), matches.maxRank(), pageIds, ranks);
+    }
+
+    public RankedPages searchSite(Set<String> queryLemmas, List<PhraseQuery> phrases, int sId, int topK) {
+        LinkedHashMap<String, Integer> sortedLemmaFreqMap = sortedLemmaFreqMapForming(queryLemmas, sId);
+        if (sortedLemmaFreqMap == null) {
             return null;
         }
-        LinkedHashMap<Integer, Float> pageIdRankRel = new LinkedHashMap<>();
-        float maxRel = Constants.EPS;
-        for (int pageId : pageIds) {
-            float rankAbs = indexRepository.getIndexSumRank(pageId, lemmaIds);
-            pageIdRankRel.put(pageId, rankAbs);
-            if ((maxRel - rankAbs) < Constants.EPS) {
-                maxRel = rankAbs;
-            }
+        return sortedDescPageIdRankAbsForming(sId, sortedLemmaFreqMap, phrases, topK);
+    }
+
+    //Из страниц со всеми леммами запроса остаются те, где выполняются все фразы.
+    //Позиции лемм фраз читаются из index пакетами страниц, чтобы не держать в памяти позиции всех кандидатов.
+    //Страницы, проиндексированные без позиций, проверяются по своему тексту
+    private SiteIndex.Matches filterPhrases(int sId, SiteIndex.Matches matches, List<PhraseQuery> phrases) {
+        Set<String> phraseLemmas = new HashSet<>();
+        for (PhraseQuery phrase : phrases) {
+            phraseLemmas.addAll(phrase.lemmas());
         }
-        for (Map.Entry<Integer, Float> entry : pageIdRankRel.entrySet()) {
-            pageIdRankRel.put(entry.getKey(), entry.getValue() / maxRel);
+        int[] pageIds = new int[matches.size()];
+        int[] ranks = new int[matches.size()];
+        int kept = 0;
+        int maxRank = 0;
+        for (int from = 0; from < matches.size(); from += Constants.POSITIONS_BATCH_SIZE) {
+            int to = Math.min(matches.size(), from + Constants.POSITIONS_BATCH_SIZE);
+            List<Integer> chunk = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                chunk.add(matches.pageIds()[i]);
+            }
+            Set<Integer> withoutPositions = new HashSet<>();
+            Map<Integer, Map<String, Positions>> positions = pageIndexRepository.findPositions(sId, phraseLemmas, chunk,
+                    withoutPositions);
+            for (Map.Entry<Integer, PageText> page : pageIndexRepository.findPageTexts(sId, withoutPositions).entrySet()) {
+                String text = page.getValue().isLegacy()
+                        ? PageContent.extractText(Jsoup.parse(page.getValue().content())) : page.getValue().text();
+                positions.put(page.getKey(), lemmaFinder.collectLemmaPositions(text));
+            }
+            for (int i = from; i < to; i++) {
+                Map<String, Positions> pagePositions = positions.getOrDefault(matches.pageIds()[i], Map.of());
+                if (phrases.stream().allMatch(phrase -> phrase.matches(pagePositions))) {
+                    pageIds[kept] = matches.pageIds()[i];
+                    ranks[kept++] = matches.ranks()[i];
+                    maxRank = Math.max(maxRank, matches.ranks()[i]);
+                }
+            }
         }
-
-        return pageIdRankRel.entrySet()
-                .stream()
-                .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
-                .collect(Collectors
-                        .toMap(Map.Entry::getKey,
-                                Map.Entry::getValue,
-                                (e1, e2) -> e1,
-                                LinkedHashMap::new));
+        return new SiteIndex.Matches(Arrays.copyOf(pageIds, kept), Arrays.copyOf(ranks, kept), maxRank);
     }
 
     public String getTitle(String content) {
@@ -172,55 +207,6 @@ public class SearchServiceImpl implements SearchService {
         return title;
     }
 
-    public String getSnippet(String content, String query) {
-        //set snippet
-        String noHtml = lemmaFinderRus.clearHtmlTags(content);
-        String snippet = "";
-        String[] words = lemmaFinderRus.arrayContainsAnyWords(query);
-        for (String word : words) {
-            if (word.replaceAll("([^а-я\\s])", " ").trim().isEmpty()) {
-                if (lemmaFinderEng.isParticle(word)) {
-                    continue;
-                }
-            } else {
-                if (lemmaFinderRus.isParticle(word)) {
-                    continue;
-                }
-            }
-            int pos = noHtml.indexOf(word);
-            if (pos == -1) {
-                continue;
-            }
-            int b, e;
-            if (pos - Constants.SNIPPET_SYMBOLS_COUNT <= 0) {
-                b = pos;
-            } else {
-                b = pos - Constants.SNIPPET_SYMBOLS_COUNT;
-            }
-            if (noHtml.length() - Constants.SNIPPET_SYMBOLS_COUNT <= 0) {
-                e = pos + word.length();
-            } else {
-                e = pos + Constants.SNIPPET_SYMBOLS_COUNT - 1;
-            }
-            String subNoHtml = noHtml.substring(b, e);
-            if (!snippet.isEmpty()) {
-                snippet = snippet.concat("\n").concat("\r");
-            }
-            int bSubNoHtml, eSubNoHtml;
-            bSubNoHtml = subNoHtml.indexOf(word);
-            eSubNoHtml = bSubNoHtml + word.length();
-            String str = subNoHtml.substring(eSubNoHtml, subNoHtml.length() - 1);
-            if (bSubNoHtml == 0) {
-                snippet = snippet.concat("<b>").concat(word).concat("</b>").concat(str);
-            } else {
-                snippet = snippet.concat(subNoHtml.substring(0, bSubNoHtml)).concat("<b>")
-                        .concat(word).concat("</b>").concat(str);
-            }
-        }
-
-        return snippet;
-    }
-
     @Override
     public SearchResponse search(String query, String url, Integer offset, Integer limit) {
         String resParamVerify = checkParamVerify(query, url);
@@ -228,9 +214,10 @@ public class SearchServiceImpl implements SearchService {
             return setSearchResponse(false, resParamVerify, 0, null, offset, limit);
         }
 
-        List<DataSearchItem> data = new ArrayList<>();
-        int count = 0;
         url = url.toLowerCase(Locale.ROOT);
+        List<SearchTarget> targets = new ArrayList<>();
+        //Поколения берутся до поиска: изменение сайта во время поиска сделает сохраненный ответ устаревшим
+        Map<Integer, Long> generations = new LinkedHashMap<>();
         for (Site site : sites.getSites()) {
             if (!url.isBlank() && url.compareToIgnoreCase(site.getUrl()) != 0) {
                 continue;
@@ -240,42 +227,150 @@ public class SearchServiceImpl implements SearchService {
             if (sId == -1 || status != Status.INDEXED) {
                 continue;
             }
+            targets.add(new SearchTarget(site, sId));
+            generations.put(sId, searchIndex.generation(sId));
+        }
+
+        //Леммы запроса выделяются один раз и используются для ключа кеша и поиска по всем сайтам
+        Set<String> queryLemmas = new LinkedHashSet<>();
+        for (String lemma : lemmaFinder.collectLemmas(query).keySet()) {
+            queryLemmas.add(lemma.toLowerCase(Locale.ROOT));
+        }
+        //Фразы в кавычках входят в ключ кеша: тот же набор лемм без кавычек дает другой ответ
+        //Без позиционного индекса кавычки не поддерживаются и запрос ищется как обычный
+        List<PhraseQuery> phrases = crawlSettings.isPositionalIndex() ? PhraseQuery.parse(query, lemmaFinder) : List.of();
+        Set<String> keyTerms = new LinkedHashSet<>(queryLemmas);
+        for (PhraseQuery phrase : phrases) {
+            keyTerms.add(phrase.toString());
+        }
+        String cacheKey = SearchResultCache.key(keyTerms, url, offset, limit);
+        SearchResponse cached = searchResultCache.get(cacheKey, generations);
+        if (cached != null) {
+            return cached;
+        }
 
-            LinkedHashMap<String, Integer> sortedLemmaFreqMap = sortedLemmaFreqMapForming(query, sId);
-            if (sortedLemmaFreqMap == null) {
+        //Сайты ищутся параллельно, каждый отдает offset + limit лучших страниц; общая выдача собирается
+        //по абсолютной релевантности, относительная считается от максимума по всем сайтам
+        int topK = offset + limit;
+        //При переполненной очереди сайт не ищется в потоке запроса (это обошло бы ограничение по времени),
+        //а попадает в выдачу как неполный
+        List<Future<RankedPages>> futures = new ArrayList<>();
+        for (SearchTarget target : targets) {
+            try {
+                futures.add(searchExecutor.submit(() -> searchSite(queryLemmas, phrases, target.siteId(), topK)));
+            } catch (RejectedExecutionException e) {
+                futures.add(null);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchSettings.getSiteTimeoutMillis());
+        boolean partial = false;
+        int count = 0;
+        int maxRank = 0;
+        List<Hit> hits = new ArrayList<>();
+        for (int t = 0; t < targets.size(); t++) {
+            Future<RankedPages> future = futures.get(t);
+            if (future == null) {
+                System.out.println("Search queue is full, site skipped: " + targets.get(t).site().getUrl());
+                partial = true;
                 continue;
             }
-
-            LinkedHashMap<Integer, Float> sortedDescPageIdRankRel = sortedDescPageIdRankRelForming(sId, sortedLemmaFreqMap);
-            if (sortedDescPageIdRankRel == null) {
+            RankedPages ranked;
+            try {
+                ranked = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                System.out.println("Search timeout for site " + targets.get(t).site().getUrl());
+                partial = true;
                 continue;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                partial = true;
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.stream().filter(Objects::nonNull).forEach(f -> f.cancel(true));
+                partial = true;
+                break;
+            }
+            if (ranked == null) {
+                continue;
+            }
+            count += ranked.count();
+            maxRank = Math.max(maxRank, ranked.maxRank());
+            for (int i = 0; i < ranked.pageIds().length; i++) {
+                hits.add(new Hit(t, ranked.pageIds()[i], ranked.ranks()[i]));
             }
+        }
+        hits.sort(Comparator.comparingInt(Hit::rank).reversed()
+                .thenComparingInt(Hit::target)
+                .thenComparingInt(Hit::pageId));
 
-            count += sortedDescPageIdRankRel.size();
-            String content, snippet;
-            for (Map.Entry<Integer, Float> entry : sortedDescPageIdRankRel.entrySet()) {
-                content = pageRepository.getContent(entry.getKey(), sId);
-                snippet = getSnippet(content, query);
-                if (snippet.isEmpty()) {
-                    count--;
-                    continue;
-                }
-                DataSearchItem item = new DataSearchItem();
-                item.setSite(site.getUrl());
-                item.setSiteName(site.getName());
-                item.setRelevance(entry.getValue());
-                item.setUri(pageRepository.getPath(entry.getKey(), sId));
-                item.setTitle(getTitle(content));
-                item.setSnippet(snippet);
+        List<Hit> window = hits.subList(Math.min(offset, hits.size()), Math.min(topK, hits.size()));
+        //Позиции лемм запроса для страниц окна - одним запросом на сайт
+        Map<Integer, List<Integer>> windowPages = new HashMap<>();
+        for (Hit hit : window) {
+            windowPages.computeIfAbsent(hit.target(), t -> new ArrayList<>()).add(hit.pageId());
+        }
+        //Путь, заголовок и текст страниц окна - тоже одним запросом на сайт
+        Map<Integer, Map<Integer, Map<String, Positions>>> windowPositions = new HashMap<>();
+        Map<Integer, Map<Integer, PageText>> windowTexts = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : windowPages.entrySet()) {
+            int sId = targets.get(entry.getKey()).siteId();
+            windowPositions.put(entry.getKey(), pageIndexRepository.findPositions(sId, queryLemmas, entry.getValue()));
+            windowTexts.put(entry.getKey(), pageIndexRepository.findPageTexts(sId, entry.getValue()));
+        }
 
-                data.add(item);
+        //Леммы запроса для сниппетов нумеруются один раз на весь запрос
+        SnippetBuilder.Terms terms = SnippetBuilder.Terms.of(queryLemmas);
+        List<DataSearchItem> data = new ArrayList<>();
+        float maxRel = Math.max(maxRank, Constants.EPS);
+        String text, snippet;
+        for (Hit hit : window) {
+            Site site = targets.get(hit.target()).site();
+            PageText page = windowTexts.get(hit.target()).get(hit.pageId());
+            if (page == null) {
+                //страница удалена повторной индексацией после поиска по индексу
+                continue;
+            }
+            DataSearchItem item = new DataSearchItem();
+            Map<String, Positions> positions;
+            if (page.isLegacy()) {
+                //позиции старых страниц указывают в HTML, поэтому текст размечается заново
+                text = PageContent.extractText(Jsoup.parse(page.content()));
+                positions = Map.of();
+                item.setTitle(getTitle(page.content()));
+            } else {
+                text = page.text();
+                positions = windowPositions.get(hit.target()).getOrDefault(hit.pageId(), Map.of());
+                item.setTitle(page.title() == null || page.title().isBlank() ? getTitle("") : page.title());
             }
+            snippet = snippetBuilder.build(text, terms, positions);
+            if (snippet.isEmpty()) {
+                snippet = getFallbackSnippet(text);
+            }
+            item.setSite(site.getUrl());
+            item.setSiteName(site.getName());
+            item.setRelevance(hit.rank() / maxRel);
+            item.setUri(page.path());
+            item.setSnippet(snippet);
+
+            data.add(item);
         }
 
-        List<DataSearchItem> dataLimitRange = data.size() > (offset + limit) ? new ArrayList<>(data.subList(offset, offset + limit)) :
-                new ArrayList<>(data.subList(offset, data.size()));
+        SearchResponse response = setSearchResponse(true, "", count, data, offset, limit);
+        response.setPartial(partial);
+        if (!partial) {
+            searchResultCache.put(cacheKey, generations, response);
+        }
+        return response;
+    }
 
-        return setSearchResponse(true, "", count, dataLimitRange, offset, limit);
+    //Слова запроса могут не встретиться в тексте дословно (совпала только лемма) - тогда показывается начало текста,
+    //чтобы count оставался точным числом найденных страниц
+    public String getFallbackSnippet(String text) {
+        String trimmed = text.trim();
+        int end = Math.min(trimmed.length(), Constants.SNIPPET_SYMBOLS_COUNT * 2);
+        return trimmed.substring(0, end);
     }
 
     public SearchResponse setSearchResponse(boolean bRes, String err, int count, List<DataSearchItem> data, int offset, int limit) {
@@ -289,4 +384,13 @@ public class SearchServiceImpl implements SearchService {
         return response;
     }
 
+    public record RankedPages(int count, int maxRank, int[] pageIds, int[] ranks) {
+    }
+
+    private record Hit(int target, int pageId, int rank) {
+    }
+
+    private record SearchTarget(Site site, int siteId) {
+    }
+
 }
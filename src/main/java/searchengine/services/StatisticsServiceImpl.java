@@ -55,18 +55,24 @@ public class StatisticsServiceImpl implements StatisticsService {
             sitesCfgDb.put(site.getName(), site.getUrl());
         }
 
+        HashMap<String, Integer> weights = new HashMap<>();
+        for (Site site : sites.getSites()) {
+            weights.put(site.getUrl().toLowerCase(Locale.ROOT), site.getWeight());
+        }
+
         HashSet<Site> sitesActual = new HashSet<>();
         for (Map.Entry<String, String> sitesAct : sitesCfgDb.entrySet()) {
             Site st = new Site();
             st.setName(sitesAct.getKey());
             st.setUrl(sitesAct.getValue());
+            st.setWeight(weights.getOrDefault(sitesAct.getValue(), 1));
             sitesActual.add(st);
         }
         sites.setSites(sitesActual);
 
         TotalStatistics total = new TotalStatistics();
         total.setSites(sites.getSites().size());
-        total.setIndexing(true);
+        total.setIndexing(siteRepository.getCrawlingCount() > 0);
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
         Set<Site> sitesList = sites.getSites();
@@ -81,6 +87,12 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setPages(pages);
             item.setLemmas(lemmas);
             Status stat = siteRepository.findAllContains(sId).stream().findFirst().map(searchengine.model.Site::getStatus).orElse(Status.NOTFOUND);
+            //Страницы и леммы показываются по рабочему поколению, статус - по строящемуся, если оно есть,
+            //или INDEXING, пока рабочее поколение обновляется на месте
+            boolean crawling = siteRepository.findAllContains(sId).stream().findFirst().map(searchengine.model.Site::isCrawling).orElse(false);
+            if (crawling || !siteRepository.findShadows(site.getUrl().toLowerCase(), site.getName().toLowerCase(), Status.INDEXING.toString()).isEmpty()) {
+                stat = Status.INDEXING;
+            }
             item.setStatus(stat.toString());
             String err = siteRepository.findAllContains(sId).stream().findFirst().map(searchengine.model.Site::getLastError).orElse(null);
             if (err == null) {
@@ -0,0 +1,100 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.CrawlCheckpoint;
+import searchengine.repositories.CrawlCheckpointRepository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Сохранение состояния обхода сайта в таблицу crawl_checkpoint и его чтение для продолжения обхода.
+//Сохраняются отпечатки занятых адресов и адреса, принятые в обход, но еще не записанные в БД
+@Component
+public class CrawlCheckpointer {
+    private final CrawlCheckpointRepository repository;
+
+    public CrawlCheckpointer(CrawlCheckpointRepository repository) {
+        this.repository = repository;
+    }
+
+    //Завершенный обход не сохраняется: complete() удаляет его состояние под той же блокировкой
+    public void save(SiteCrawl site) {
+        synchronized (site) {
+            if (site.isCompleted()) {
+                return;
+            }
+            //Снимок берется под записью frontierLock, пока прием и завершение адресов стоят.
+            //visited читается первым: каждый занятый в нем адрес к чтению frontier либо еще в нем, либо пройден.
+            //В обратном порядке мог бы сохраниться адрес, занятый в visited, но отсутствующий во frontier,
+            //и при продолжении он и все ссылки под ним больше не обходятся
+            long[] visited;
+            List<String> frontier;
+            site.getFrontierLock().writeLock().lock();
+            try {
+                visited = site.getVisited().toArray();
+                frontier = new ArrayList<>(site.getPendingUrls());
+            } finally {
+                site.getFrontierLock().writeLock().unlock();
+            }
+            repository.upsert(site.getSiteId(), site.getReplacesSiteId(), site.isIncremental(),
+                    encodeVisited(visited), encodeFrontier(frontier), LocalDateTime.now());
+            System.out.println("Checkpoint of " + site.getName() + ": visited " + visited.length
+                    + ", frontier " + frontier.size());
+        }
+    }
+
+    public void delete(int siteId) {
+        repository.deleteBySiteId(siteId);
+    }
+
+    public void deleteAll() {
+        repository.deleteAllCheckpoints();
+    }
+
+    public List<CrawlCheckpoint> findAll() {
+        return repository.findAllCheckpoints();
+    }
+
+    public static byte[] encodeVisited(long[] fingerprints) {
+        ByteBuffer buffer = ByteBuffer.allocate(fingerprints.length * Long.BYTES);
+        buffer.asLongBuffer().put(fingerprints);
+        return buffer.array();
+    }
+
+    public static long[] decodeVisited(byte[] bytes) {
+        long[] fingerprints = new long[bytes.length / Long.BYTES];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(fingerprints);
+        return fingerprints;
+    }
+
+    public static byte[] encodeFrontier(List<String> urls) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(urls.size());
+            for (String url : urls) {
+                out.writeUTF(url);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<String> decodeFrontier(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)))) {
+            int count = in.readInt();
+            List<String> urls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                urls.add(in.readUTF());
+            }
+            return urls;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
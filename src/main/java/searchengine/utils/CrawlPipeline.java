@@ -0,0 +1,588 @@
+package searchengine.utils;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.Constants;
+import searchengine.config.CrawlSettings;
+import searchengine.config.Messages;
+import searchengine.model.Status;
+import searchengine.repositories.PageIndexRepository;
+import searchengine.repositories.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Обход сайтов разбит на стадии со своими пулами потоков:
+//  fetch   - скачивание страниц, ограничено сетью;
+//  parse   - разбор HTML, извлечение ссылок и лемматизация, ограничено CPU;
+//  persist - пакетная запись страниц, лемм и индекса в БД.
+//Между стадиями ограниченные очереди: если следующая стадия не успевает, предыдущая ждет.
+//Адреса всех сайтов распределяет между потоками fetch общий CrawlScheduler.
+//Стадия fetch передает дальше байты ответа, DOM строится и отбрасывается внутри стадии parse;
+//число страниц в работе ограничено max-in-flight-pages, прогресс виден по счетчикам SiteCrawl.
+@Component
+public class CrawlPipeline {
+    private final CrawlSettings settings;
+    private final PageFetcher pageFetcher;
+    private final LemmaFinder lemmaFinder;
+    private final SiteRepository siteRepository;
+    private final PageIndexRepository pageIndexRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final GenerationCollector generationCollector;
+    private final CrawlCheckpointer checkpointer;
+    private final SearchIndex searchIndex;
+
+    private final CrawlScheduler scheduler;
+    private final BlockingQueue<FetchedTask> parseQueue;
+    private final BlockingQueue<ParsedPage> persistQueue;
+    private final Map<Integer, SiteCrawl> activeCrawls = new ConcurrentHashMap<>();
+    //Страницы от начала скачивания до записи в БД; ограничивает память, занятую обходом
+    private final Semaphore inFlightPages;
+    private ExecutorService fetchStage, parseStage, persistStage;
+    private ScheduledExecutorService checkpointStage;
+
+    public CrawlPipeline(CrawlSettings settings, PageFetcher pageFetcher, LemmaFinder lemmaFinder,
+                         SiteRepository siteRepository, PageIndexRepository pageIndexRepository,
+                         TransactionTemplate transactionTemplate, GenerationCollector generationCollector,
+                         CrawlCheckpointer checkpointer, SearchIndex searchIndex) {
+        this.settings = settings;
+        this.pageFetcher = pageFetcher;
+        this.lemmaFinder = lemmaFinder;
+        this.siteRepository = siteRepository;
+        this.pageIndexRepository = pageIndexRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.generationCollector = generationCollector;
+        this.checkpointer = checkpointer;
+        this.searchIndex = searchIndex;
+        scheduler = new CrawlScheduler(settings.getMaxFetchesPerSite(), settings.getRequestsPerSecond(), settings.getBurst());
+        inFlightPages = new Semaphore(settings.getMaxInFlightPages());
+        parseQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        persistQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void startStages() {
+        fetchStage = startStage("crawl-fetch", settings.getFetchWorkers(), this::fetchLoop);
+        parseStage = startStage("crawl-parse", settings.getParseWorkers(), this::parseLoop);
+        persistStage = startStage("crawl-persist", settings.getPersistWorkers(), this::persistLoop);
+        checkpointStage = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crawl-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.getCheckpointIntervalSeconds() > 0) {
+            checkpointStage.scheduleWithFixedDelay(this::checkpointAll, settings.getCheckpointIntervalSeconds(),
+                    settings.getCheckpointIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchStage.shutdownNow();
+        parseStage.shutdownNow();
+        persistStage.shutdownNow();
+        checkpointStage.shutdownNow();
+    }
+
+    private static ExecutorService startStage(String name, int workers, Runnable loop) {
+        AtomicInteger number = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, name + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.execute(loop);
+        }
+        return executor;
+    }
+
+    public SiteCrawl start(int siteId, String name, String url, int weight) {
+        return start(siteId, name, url, weight, Map.of());
+    }
+
+    //Повторная индексация: все сохраненные страницы ставятся в обход сразу и скачиваются условным запросом.
+    //Новые страницы находятся по ссылкам со страниц, которые изменились
+    public SiteCrawl start(int siteId, String name, String url, int weight, Map<String, StoredPage> storedPages) {
+        return launch(new SiteCrawl(siteId, name, url, weight, storedPages, Constants.NOTFOUND));
+    }
+
+    //Полная переиндексация в новое (теневое) поколение сайта siteId рядом с рабочим liveSiteId.
+    //Пока обход идет, поиск работает по рабочему поколению; по завершении поколения меняются местами
+    public SiteCrawl startShadow(int siteId, int liveSiteId, String name, String url, int weight) {
+        return launch(new SiteCrawl(siteId, name, url, weight, Map.of(), liveSiteId));
+    }
+
+    //Продолжение обхода по сохраненному состоянию: занятые адреса не обходятся повторно,
+    //адреса из frontier ставятся в очередь без проверки занятости
+    public SiteCrawl resume(int siteId, String name, String url, int weight, Map<String, StoredPage> storedPages,
+                            int replacesSiteId, long[] visited, List<String> frontier) {
+        SiteCrawl site = new SiteCrawl(siteId, name, url, weight, storedPages, replacesSiteId);
+        for (long fingerprint : visited) {
+            site.getVisited().add(fingerprint);
+        }
+        activeCrawls.put(siteId, site);
+        site.getPending().incrementAndGet();
+        for (String link : frontier) {
+            enqueue(site, link);
+        }
+        finish(site);
+        return site;
+    }
+
+    private SiteCrawl launch(SiteCrawl site) {
+        activeCrawls.put(site.getSiteId(), site);
+        site.getPending().incrementAndGet();
+        admit(site, site.getRootUrl());
+        for (String path : site.getStoredPages().keySet()) {
+            admit(site, site.urlOf(path));
+        }
+        finish(site);
+        return site;
+    }
+
+    public Collection<SiteCrawl> getActiveCrawls() {
+        return activeCrawls.values();
+    }
+
+    //Останавливает все обходы и ждет, пока уже принятые в стадии страницы будут обработаны
+    public boolean stopAll(long timeout, TimeUnit unit) throws InterruptedException {
+        List<SiteCrawl> sites = new ArrayList<>(activeCrawls.values());
+        for (SiteCrawl site : sites) {
+            site.stop();
+            try {
+                checkpointer.save(site);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            int removed = scheduler.remove(site);
+            if (removed > 0 && site.getPending().addAndGet(-removed) == 0) {
+                complete(site);
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (SiteCrawl site : sites) {
+            if (!site.awaitDone(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getFrontierSize() {
+        return scheduler.size();
+    }
+
+    public int getParseQueueDepth() {
+        return parseQueue.size();
+    }
+
+    public long getPagesFetched() {
+        long fetched = 0;
+        for (SiteCrawl site : activeCrawls.values()) {
+            fetched += site.getPagesFetched().get();
+        }
+        return fetched;
+    }
+
+    public long getPagesSaved() {
+        long saved = 0;
+        for (SiteCrawl site : activeCrawls.values()) {
+            saved += site.getPagesSaved().get();
+        }
+        return saved;
+    }
+
+    public int getVisitedUrls() {
+        int visited = 0;
+        for (SiteCrawl site : activeCrawls.values()) {
+            visited += site.getVisited().size();
+        }
+        return visited;
+    }
+
+    public int getInFlightPages() {
+        return settings.getMaxInFlightPages() - inFlightPages.availablePermits();
+    }
+
+    public int getPersistQueueDepth() {
+        return persistQueue.size();
+    }
+
+    //Адрес занимается по пути страницы в том виде, в каком он хранится в page.path:
+    //адреса, отличающиеся только завершающим '/' или регистром, скачиваются один раз
+    private void admit(SiteCrawl site, String url) {
+        site.getFrontierLock().readLock().lock();
+        try {
+            if (!site.getVisited().add(UrlFingerprintSet.fingerprint(site.pathOf(url)))) {
+                return;
+            }
+            enqueue(site, url);
+        } finally {
+            site.getFrontierLock().readLock().unlock();
+        }
+    }
+
+    private void enqueue(SiteCrawl site, String url) {
+        site.getPendingUrls().add(url);
+        site.getPending().incrementAndGet();
+        scheduler.add(site, url);
+    }
+
+    //Вызывается после того, как ссылки страницы уже приняты в обход: снимок checkpoint, в котором страницы
+    //уже нет во frontier, содержит ее ссылки во frontier или они уже пройдены
+    private void finishPage(SiteCrawl site, String url) {
+        site.getFrontierLock().readLock().lock();
+        try {
+            site.getPendingUrls().remove(url);
+        } finally {
+            site.getFrontierLock().readLock().unlock();
+        }
+        inFlightPages.release();
+        finish(site);
+    }
+
+    private void checkpointAll() {
+        for (SiteCrawl site : activeCrawls.values()) {
+            if (site.isStopped()) {
+                continue;
+            }
+            try {
+                checkpointer.save(site);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void finish(SiteCrawl site) {
+        if (site.getPending().decrementAndGet() == 0) {
+            complete(site);
+        }
+    }
+
+    private void complete(SiteCrawl site) {
+        activeCrawls.remove(site.getSiteId(), site);
+        //Состояние остановленного обхода остается для продолжения, завершенного - удаляется
+        synchronized (site) {
+            site.markCompleted();
+            if (!site.isStopped()) {
+                checkpointer.delete(site.getSiteId());
+            }
+        }
+        siteRepository.updateStatusTime(site.getSiteId(), LocalDateTime.now());
+        if (site.isStopped()) {
+            //Рабочее поколение, обновлявшееся на месте, остается в прежнем статусе и доступно поиску
+            if (!site.isIncremental()) {
+                siteRepository.updateStatus(site.getSiteId(), Status.FAILED.toString());
+            }
+            siteRepository.updateLastError(site.getSiteId(), Messages.indexingStopped);
+        } else if (site.getPagesFailed().get() > 0) {
+            //Поколение без части страниц не заменяет рабочее, сайт, обновлявшийся на месте, сохраняет статус
+            if (!site.isIncremental()) {
+                siteRepository.updateStatus(site.getSiteId(), Status.FAILED.toString());
+            }
+            siteRepository.updateLastError(site.getSiteId(), Messages.pagesNotSaved + site.getPagesFailed().get());
+        } else if (site.isShadow()) {
+            siteRepository.swapGeneration(site.getSiteId(), site.getReplacesSiteId(), LocalDateTime.now());
+            searchIndex.evict(site.getReplacesSiteId());
+            searchIndex.warm(site.getSiteId());
+        } else {
+            siteRepository.updateStatus(site.getSiteId(), Status.INDEXED.toString());
+        }
+        if (site.isShadow()) {
+            generationCollector.collect();
+        } else {
+            siteRepository.updateCrawling(site.getSiteId(), false);
+        }
+        System.out.println("Amount indexed pages = " + site.getPagesSaved() + ". Site name = " + site.getName());
+        if (site.isIncremental()) {
+            System.out.println("Unchanged pages = " + site.getPagesUnchanged() + ", removed pages = " + site.getPagesRemoved()
+                    + ". Site name = " + site.getName());
+        }
+        site.markDone();
+    }
+
+    private void fetchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            CrawlScheduler.Task task;
+            try {
+                inFlightPages.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task = scheduler.take();
+            } catch (InterruptedException e) {
+                inFlightPages.release();
+                return;
+            }
+            try {
+                FetchedTask fetched;
+                try {
+                    fetched = fetch(task);
+                } finally {
+                    scheduler.release(task.site());
+                }
+                if (fetched == null) {
+                    finishPage(task.site(), task.url());
+                } else {
+                    parseQueue.put(fetched);
+                }
+            } catch (InterruptedException e) {
+                finishPage(task.site(), task.url());
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                finishPage(task.site(), task.url());
+            }
+        }
+    }
+
+    private FetchedTask fetch(CrawlScheduler.Task task) {
+        SiteCrawl site = task.site();
+        String path = site.pathOf(task.url());
+        if (site.isStopped()) {
+            return null;
+        }
+        if (site.getRobotsLoaded().compareAndSet(false, true)) {
+            loadCrawlDelay(site);
+        }
+
+        System.out.println(task.url());
+        StoredPage stored = site.getStoredPages().get(path);
+        FetchedPage page = stored == null ? pageFetcher.fetch(task.url(), true)
+                : pageFetcher.fetch(task.url(), true, stored.etag(), stored.lastModified());
+        if (page == null) {
+            System.out.println("Error fetch() for " + task.url());
+            return null;
+        }
+        site.getPagesFetched().incrementAndGet();
+        if (page.isError()) {
+            siteRepository.updateLastError(site.getSiteId(), page.getCode() + " " + page.getStatusMessage());
+            //Исчезнувшая страница удаляется из индекса стадией persist
+            boolean removed = page.getCode() == 404 || page.getCode() == 410;
+            return stored != null && removed ? new FetchedTask(site, task.url(), path, page, stored) : null;
+        }
+        if (stored != null && stored.isUnchanged(page)) {
+            site.getPagesUnchanged().incrementAndGet();
+            return null;
+        }
+        if (page.isNotModified()) {
+            return null;
+        }
+        //После редиректа итоговый адрес тоже занимается, чтобы одна страница не сохранялась дважды
+        String finalUrl = SiteCrawl.removeLastSymbol(page.getFinalUrl(), '/').toLowerCase();
+        if (site.isInside(finalUrl) && !site.pathOf(finalUrl).equals(path)
+                && !site.getVisited().add(UrlFingerprintSet.fingerprint(site.pathOf(finalUrl)))) {
+            return null;
+        }
+        return new FetchedTask(site, task.url(), path, page, stored);
+    }
+
+    private void loadCrawlDelay(SiteCrawl site) {
+        String robotsTxt = pageFetcher.fetchText(site.getProtocol() + "://" + site.getHost() + "/robots.txt");
+        if (robotsTxt == null) {
+            return;
+        }
+        double crawlDelay = RobotsTxt.parseCrawlDelay(robotsTxt, pageFetcher.getUserAgent());
+        if (crawlDelay > 0) {
+            System.out.println("Crawl-delay " + crawlDelay + " s for " + site.getHost());
+            scheduler.applyCrawlDelay(site.getHost(), crawlDelay);
+        }
+    }
+
+    private void parseLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            FetchedTask task;
+            try {
+                task = parseQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                ParsedPage parsed = parse(task);
+                if (parsed == null) {
+                    finishPage(task.site(), task.url());
+                } else {
+                    persistQueue.put(parsed);
+                }
+            } catch (InterruptedException e) {
+                finishPage(task.site(), task.url());
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                finishPage(task.site(), task.url());
+            }
+        }
+    }
+
+    private ParsedPage parse(FetchedTask task) {
+        SiteCrawl site = task.site();
+        if (site.isStopped()) {
+            return null;
+        }
+        if (task.page().isError()) {
+            return new ParsedPage(site, task.url(), task.path(), task.page().getCode(), null, null, null, task.stored(), null, null, null);
+        }
+        Document doc = task.page().parse();
+        for (Element aHref : doc.select("a[href]")) {
+            String link = aHref.absUrl("href");
+            int hash = link.indexOf('#');
+            if (hash != -1) {
+                link = link.substring(0, hash);
+            }
+            link = SiteCrawl.removeLastSymbol(link, '/').toLowerCase();
+            if (link.isEmpty() || !site.isInside(link)) {
+                continue;
+            }
+            admit(site, link);
+        }
+
+        //Леммы строятся по видимому тексту: разметка, атрибуты и скрипты не индексируются
+        PageContent content = PageContent.of(doc, settings.isStoreHtml());
+        FetchedPage page = task.page();
+        Map<String, Positions> positions = null;
+        Map<String, Integer> lemmas;
+        if (settings.isPositionalIndex()) {
+            positions = lemmaFinder.collectLemmaPositions(content.text());
+            lemmas = Positions.counts(positions);
+        } else {
+            lemmas = lemmaFinder.collectLemmas(content.text());
+        }
+        return new ParsedPage(site, task.url(), task.path(), page.getCode(), content, lemmas, positions, task.stored(),
+                page.getEtag(), page.getLastModified(), page.contentHash());
+    }
+
+    private void persistLoop() {
+        List<ParsedPage> batch = new ArrayList<>(settings.getPersistBatchSize());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(persistQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            persistQueue.drainTo(batch, settings.getPersistBatchSize() - 1);
+            try {
+                persist(batch);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                persistEach(batch);
+            } finally {
+                for (ParsedPage page : batch) {
+                    finishPage(page.site(), page.url());
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    //Пакет, который не удалось записать целиком, пишется по одной странице, чтобы ошибка одной страницы
+    //не теряла остальные. Незаписанная страница отмечается в обходе своего сайта и в last_error
+    private void persistEach(List<ParsedPage> batch) {
+        for (ParsedPage page : batch) {
+            try {
+                persist(List.of(page));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                page.site().getPagesFailed().incrementAndGet();
+                try {
+                    siteRepository.updateLastError(page.site().getSiteId(), Messages.pageNotSaved + page.url());
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    //Пакет страниц пишется одной транзакцией; при взаимной блокировке с другим потоком повторяется.
+    //Измененная страница сохраняет свой id: ее строки index и вклад в lemma пересчитываются заново
+    private void persist(List<ParsedPage> batch) {
+        Map<SiteCrawl, List<ParsedPage>> bySite = new LinkedHashMap<>();
+        for (ParsedPage page : batch) {
+            bySite.computeIfAbsent(page.site(), s -> new ArrayList<>()).add(page);
+        }
+        Map<SiteCrawl, Map<Integer, Map<String, Integer>>> saved = new HashMap<>();
+        Map<SiteCrawl, Map<Integer, List<String>>> unindexed = new HashMap<>();
+        Map<SiteCrawl, Integer> removed = new HashMap<>();
+        for (int attempt = 1; ; attempt++) {
+            saved.clear();
+            unindexed.clear();
+            removed.clear();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (Map.Entry<SiteCrawl, List<ParsedPage>> entry : bySite.entrySet()) {
+                        int siteId = entry.getKey().getSiteId();
+                        Map<Integer, Map<String, Integer>> lemmasByPage = new HashMap<>();
+                        Map<Integer, Map<String, Positions>> positionsByPage = new HashMap<>();
+                        Map<Integer, List<String>> oldLemmas = new HashMap<>();
+                        for (ParsedPage page : entry.getValue()) {
+                            StoredPage stored = page.stored();
+                            if (page.isRemoved()) {
+                                oldLemmas.put(stored.id(), pageIndexRepository.deletePage(siteId, stored.id()));
+                                removed.merge(entry.getKey(), 1, Integer::sum);
+                                continue;
+                            }
+                            int pageId;
+                            if (stored == null) {
+                                pageId = pageIndexRepository.insertPage(siteId, page.path(), page.code(), page.content(),
+                                        page.etag(), page.lastModified(), page.contentHash());
+                            } else {
+                                pageId = stored.id();
+                                oldLemmas.put(pageId, pageIndexRepository.deletePageLemmas(siteId, pageId));
+                                pageIndexRepository.updatePage(pageId, page.code(), page.content(),
+                                        page.etag(), page.lastModified(), page.contentHash());
+                            }
+                            if (pageId != Constants.NOTFOUND) {
+                                lemmasByPage.put(pageId, page.lemmas());
+                                if (page.positions() != null) {
+                                    positionsByPage.put(pageId, page.positions());
+                                }
+                            }
+                        }
+                        pageIndexRepository.saveLemmas(siteId, lemmasByPage, positionsByPage);
+                        saved.put(entry.getKey(), lemmasByPage);
+                        unindexed.put(entry.getKey(), oldLemmas);
+                    }
+                });
+                break;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= Constants.PERSIST_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+        //Индекс в памяти меняется только после фиксации транзакции
+        for (Map.Entry<SiteCrawl, Map<Integer, List<String>>> entry : unindexed.entrySet()) {
+            for (Map.Entry<Integer, List<String>> page : entry.getValue().entrySet()) {
+                searchIndex.removePage(entry.getKey().getSiteId(), page.getKey(), page.getValue());
+            }
+        }
+        for (Map.Entry<SiteCrawl, Integer> entry : removed.entrySet()) {
+            entry.getKey().getPagesRemoved().addAndGet(entry.getValue());
+        }
+        for (Map.Entry<SiteCrawl, Map<Integer, Map<String, Integer>>> entry : saved.entrySet()) {
+            searchIndex.addPages(entry.getKey().getSiteId(), entry.getValue());
+            entry.getKey().getPagesSaved().addAndGet(entry.getValue().size());
+            siteRepository.updateStatusTime(entry.getKey().getSiteId(), LocalDateTime.now());
+        }
+    }
+
+    private record FetchedTask(SiteCrawl site, String url, String path, FetchedPage page, StoredPage stored) {
+    }
+
+    //content == null - страница исчезла с сайта и удаляется
+    private record ParsedPage(SiteCrawl site, String url, String path, int code, PageContent content, Map<String, Integer> lemmas,
+                              Map<String, Positions> positions, StoredPage stored, String etag, String lastModified, Long contentHash) {
+        boolean isRemoved() {
+            return content == null;
+        }
+    }
+}
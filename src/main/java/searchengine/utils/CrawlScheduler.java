@@ -0,0 +1,176 @@
+package searchengine.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Очередь адресов на скачивание для всех сайтов сразу. У каждого сайта своя очередь; сайты
+//обслуживаются по кругу, сайт с весом w получает до w адресов подряд. Одновременно скачивается
+//не больше maxFetchesPerSite страниц одного сайта, общий предел задает число потоков стадии fetch.
+//Частота запросов к хосту ограничивается HostRateLimiter: пока у хоста нет токена, его адреса
+//пропускаются и потоки скачивают страницы других хостов, а не спят.
+public class CrawlScheduler {
+    private final int maxFetchesPerSite;
+    private final double requestsPerSecond;
+    private final double burst;
+    private final Map<String, HostRateLimiter> limiters = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<SiteCrawl, SiteQueue> queues = new HashMap<>();
+    //Сайты, у которых есть адреса в очереди, в порядке обслуживания
+    private final ArrayDeque<SiteQueue> ring = new ArrayDeque<>();
+    private int size;
+    //Время до появления токена у ближайшего хоста, если pick ничего не выбрал из-за ограничения частоты
+    private long minWaitNanos;
+
+    public CrawlScheduler(int maxFetchesPerSite, double requestsPerSecond, double burst) {
+        this.maxFetchesPerSite = Math.max(1, maxFetchesPerSite);
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+    }
+
+    public void applyCrawlDelay(String host, double delaySeconds) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            limiters.computeIfAbsent(host, h -> new HostRateLimiter(requestsPerSecond, burst, now))
+                    .applyCrawlDelay(delaySeconds, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void add(SiteCrawl site, String url) {
+        lock.lock();
+        try {
+            SiteQueue queue = queues.computeIfAbsent(site, SiteQueue::new);
+            if (queue.urls.isEmpty()) {
+                ring.addLast(queue);
+            }
+            queue.urls.addLast(url);
+            size++;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Ждет адрес сайта, не превысившего свой предел одновременных скачиваний.
+    //После скачивания нужно вызвать release
+    public Task take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                SiteQueue queue = pick(now);
+                if (queue != null) {
+                    return new Task(queue.site, queue.urls.pollFirst());
+                }
+                if (minWaitNanos == Long.MAX_VALUE) {
+                    available.await();
+                } else {
+                    available.awaitNanos(minWaitNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SiteQueue pick(long now) {
+        minWaitNanos = Long.MAX_VALUE;
+        for (int i = ring.size(); i > 0; i--) {
+            SiteQueue queue = ring.pollFirst();
+            if (queue.inFlight >= maxFetchesPerSite) {
+                ring.addLast(queue);
+                continue;
+            }
+            HostRateLimiter limiter = limiters.computeIfAbsent(queue.site.getHost(),
+                    h -> new HostRateLimiter(requestsPerSecond, burst, now));
+            long wait = limiter.tryAcquire(now);
+            if (wait > 0) {
+                minWaitNanos = Math.min(minWaitNanos, wait);
+                ring.addLast(queue);
+                continue;
+            }
+            queue.inFlight++;
+            size--;
+            if (queue.urls.size() > 1) {
+                if (--queue.credits > 0) {
+                    ring.addFirst(queue);
+                } else {
+                    queue.credits = queue.site.getWeight();
+                    ring.addLast(queue);
+                }
+            } else {
+                queue.credits = queue.site.getWeight();
+            }
+            return queue;
+        }
+        return null;
+    }
+
+    public void release(SiteCrawl site) {
+        lock.lock();
+        try {
+            SiteQueue queue = queues.get(site);
+            if (queue == null) {
+                return;
+            }
+            queue.inFlight--;
+            if (queue.inFlight == 0 && queue.urls.isEmpty()) {
+                queues.remove(site);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Удаляет из очереди все адреса сайта и возвращает их количество
+    public int remove(SiteCrawl site) {
+        lock.lock();
+        try {
+            SiteQueue queue = queues.get(site);
+            if (queue == null) {
+                return 0;
+            }
+            int removed = queue.urls.size();
+            queue.urls.clear();
+            ring.remove(queue);
+            size -= removed;
+            if (queue.inFlight == 0) {
+                queues.remove(site);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public record Task(SiteCrawl site, String url) {
+    }
+
+    private static final class SiteQueue {
+        private final SiteCrawl site;
+        private final ArrayDeque<String> urls = new ArrayDeque<>();
+        private int inFlight;
+        private int credits;
+
+        private SiteQueue(SiteCrawl site) {
+            this.site = site;
+            credits = site.getWeight();
+        }
+    }
+}
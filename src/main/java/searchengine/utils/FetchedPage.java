@@ -0,0 +1,51 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+//Ответ хранится байтами: DOM строится только в parse() и живет, пока нужен вызывающему
+@Getter
+@RequiredArgsConstructor
+public class FetchedPage {
+    private final int code;
+    private final String statusMessage;
+    private final Map<String, String> headers;
+    private final String finalUrl;
+    private final byte[] body; //null if code >= 400 or 304
+    private final String charset; //null - определяется Jsoup по <meta>
+
+    public boolean isError() {
+        return code >= 400;
+    }
+
+    public boolean isNotModified() {
+        return code == 304;
+    }
+
+    public String getEtag() {
+        return headers.get("ETag");
+    }
+
+    public String getLastModified() {
+        return headers.get("Last-Modified");
+    }
+
+    public long contentHash() {
+        return UrlFingerprintSet.fingerprint(body);
+    }
+
+    public Document parse() {
+        try {
+            return Jsoup.parse(new ByteArrayInputStream(body), charset, finalUrl);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.repositories.PageIndexRepository;
+import searchengine.repositories.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Фоновое удаление теневых поколений сайтов: замененных после переключения и брошенных после остановки.
+//Запросы на сборку сливаются, одновременно работает одна сборка
+@Component
+public class GenerationCollector {
+    private final SiteRepository siteRepository;
+    private final PageIndexRepository pageIndexRepository;
+    private final SearchIndex searchIndex;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "generation-collector");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean scheduled;
+
+    public GenerationCollector(SiteRepository siteRepository, PageIndexRepository pageIndexRepository, SearchIndex searchIndex) {
+        this.siteRepository = siteRepository;
+        this.pageIndexRepository = pageIndexRepository;
+        this.searchIndex = searchIndex;
+    }
+
+    @PostConstruct
+    public synchronized void collect() {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        executor.execute(this::collectRetired);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void collectRetired() {
+        synchronized (this) {
+            scheduled = false;
+        }
+        try {
+            for (Site site : siteRepository.findRetired()) {
+                long start = System.currentTimeMillis();
+                searchIndex.evict(site.getId());
+                pageIndexRepository.deleteSite(site.getId());
+                System.out.println("Retired generation " + site.getId() + " of " + site.getUrl() + " removed in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
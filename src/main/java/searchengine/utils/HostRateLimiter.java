@@ -0,0 +1,46 @@
+package searchengine.utils;
+
+import java.util.concurrent.TimeUnit;
+
+//Token bucket для одного хоста. Не блокирует поток: tryAcquire либо забирает токен,
+//либо сообщает, через сколько наносекунд токен появится
+public class HostRateLimiter {
+    private double permitsPerSecond;
+    private double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public HostRateLimiter(double permitsPerSecond, double burst, long nowNanos) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        tokens = this.burst;
+        lastRefillNanos = nowNanos;
+    }
+
+    //0, если токен получен, иначе время ожидания следующего токена в наносекундах
+    public long tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    //Crawl-delay из robots.txt: не чаще одного запроса за delaySeconds и без пачек
+    public void applyCrawlDelay(double delaySeconds, long nowNanos) {
+        if (delaySeconds <= 0) {
+            return;
+        }
+        refill(nowNanos);
+        permitsPerSecond = Math.min(permitsPerSecond, 1 / delaySeconds);
+        burst = 1;
+        tokens = Math.min(tokens, burst);
+    }
+
+    private void refill(long nowNanos) {
+        double elapsedSeconds = (nowNanos - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(burst, tokens + elapsedSeconds * permitsPerSecond);
+        lastRefillNanos = nowNanos;
+    }
+}
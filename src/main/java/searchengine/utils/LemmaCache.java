@@ -0,0 +1,82 @@
+package searchengine.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//Ограниченный кэш "словоформа -> нормальная форма" из двух поколений: новые записи и записи,
+//найденные в старом поколении, попадают в молодое; когда молодое заполняется, оно становится
+//старым, а прежнее старое отбрасывается. Часто встречающиеся слова так переживают ротацию.
+public class LemmaCache {
+    //Служебные значения для слов без леммы; \u0000 не встречается в словоформах
+    public static final String PARTICLE = "\u0000particle";
+    public static final String NO_NORMAL_FORM = "\u0000none";
+
+    private final int generationSize;
+    private volatile ConcurrentHashMap<String, String> young;
+    private volatile ConcurrentHashMap<String, String> old;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LemmaCache(int capacity) {
+        generationSize = Math.max(1, capacity / 2);
+        young = new ConcurrentHashMap<>();
+        old = new ConcurrentHashMap<>();
+    }
+
+    public String get(String word, Function<String, String> loader) {
+        String value = young.get(word);
+        if (value == null) {
+            value = old.get(word);
+            if (value != null) {
+                put(word, value);
+            }
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.apply(word);
+        put(word, value);
+        return value;
+    }
+
+    private void put(String word, String value) {
+        ConcurrentHashMap<String, String> generation = young;
+        generation.put(word, value);
+        if (generation.size() >= generationSize) {
+            rotate(generation);
+        }
+    }
+
+    private synchronized void rotate(ConcurrentHashMap<String, String> full) {
+        if (young != full) {
+            return;
+        }
+        evictions.add(old.size());
+        old = full;
+        young = new ConcurrentHashMap<>();
+    }
+
+    public int getCapacity() {
+        return generationSize * 2;
+    }
+
+    public int getSize() {
+        return young.size() + old.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
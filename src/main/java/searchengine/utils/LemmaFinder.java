@@ -3,111 +3,189 @@ package searchengine.utils;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
+import searchengine.config.Constants;
 import searchengine.model.Language;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+//Словари морфологии загружаются один раз на весь процесс; LuceneMorphology после загрузки
+//только читается, поэтому компонент безопасно использовать из нескольких потоков
+@Component
 public class LemmaFinder {
-    private final LuceneMorphology luceneMorphology;
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final long loadTimeMillis;
+    private final long memoryBytes;
+    private final LemmaCache lemmaCache = new LemmaCache(Constants.LEMMA_CACHE_SIZE);
     private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ", "ARTICLE", "PREP", "CONJ"};
+    private static final String[] rawTextElements = new String[]{"script", "style"};
+    private static final ThreadLocal<StringBuilder> tokenBuffers = ThreadLocal.withInitial(StringBuilder::new);
+
+    public LemmaFinder() throws IOException {
+        //Прирост занятой кучи за время загрузки, без принудительной сборки мусора: оценка сверху,
+        //в нее попадает и мусор, созданный при чтении словарей
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long usedBefore = memory.getHeapMemoryUsage().getUsed();
+        long start = System.nanoTime();
+        russianMorphology = new RussianLuceneMorphology();
+        englishMorphology = new EnglishLuceneMorphology();
+        loadTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        memoryBytes = Math.max(0, memory.getHeapMemoryUsage().getUsed() - usedBefore);
+        System.out.println("Morphology dictionaries loaded in " + loadTimeMillis + " ms, heap used ~" + (memoryBytes >> 20) + " MB");
+    }
 
-    public static LemmaFinder getInstanceRus() throws IOException {
-        LuceneMorphology morphology = new RussianLuceneMorphology();
-        return new LemmaFinder(morphology);
+    public long getLoadTimeMillis() {
+        return loadTimeMillis;
     }
 
-    public static LemmaFinder getInstanceEng() throws IOException {
-        LuceneMorphology morphology = new EnglishLuceneMorphology();
-        return new LemmaFinder(morphology);
+    public long getMemoryBytes() {
+        return memoryBytes;
     }
 
-    private LemmaFinder(LuceneMorphology luceneMorphology) {
-        this.luceneMorphology = luceneMorphology;
+    public LemmaCache getLemmaCache() {
+        return lemmaCache;
     }
 
-    private LemmaFinder() {
-        throw new RuntimeException("Disallow construct");
+    private LuceneMorphology getMorphology(Language language) {
+        return language == Language.RUS ? russianMorphology : englishMorphology;
     }
 
-    public Map<String, Integer> collectLemmas(String text, Language language) {
-        String[] words;
-        char tmp;
-        if (language == Language.RUS) {
-            words = arrayContainsRussianWords(text);
-        } else {
-            words = arrayContainsEnglishWords(text);
-        }
+    //Текст просматривается один раз: кириллические и латинские слова сразу уходят в свою морфологию,
+    //содержимое <script> и <style> пропускается
+    public Map<String, Integer> collectLemmas(String text) {
         HashMap<String, Integer> lemmas = new HashMap<>();
+        forEachLemma(text, (lemma, ordinal, offset) -> lemmas.merge(lemma, 1, Integer::sum));
+        return lemmas;
+    }
 
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
+    //То же с позициями вхождений каждой леммы для позиционного индекса; смещения считаются в text
+    public Map<String, Positions> collectLemmaPositions(String text) {
+        HashMap<String, Positions.Builder> builders = new HashMap<>();
+        forEachLemma(text, (lemma, ordinal, offset) -> builders.computeIfAbsent(lemma, k -> new Positions.Builder()).add(ordinal, offset));
 
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordBaseForms)) {
-                continue;
-            }
+        HashMap<String, Positions> positions = new HashMap<>(builders.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Positions.Builder> entry : builders.entrySet()) {
+            positions.put(entry.getKey(), entry.getValue().build());
+        }
+        return positions;
+    }
+
+    //Леммы индексируемых слов текста в порядке следования, для фраз запроса
+    public List<String> lemmaSequence(String text) {
+        List<String> lemmas = new ArrayList<>();
+        forEachLemma(text, (lemma, ordinal, offset) -> lemmas.add(lemma));
+        return lemmas;
+    }
 
-            if (word.length() == 1) {
-                tmp = word.charAt(0);
-                if ((tmp >= 'a' && tmp <= 'z') || (tmp >= 'A' && tmp <= 'Z') ||
-                        (tmp >= 'а' && tmp <= 'я') || (tmp >= 'А' && tmp <= 'Я')) {
+    //Каждое индексируемое слово текста: лемма, номер среди индексируемых слов и смещение начала слова
+    public void forEachLemma(String text, LemmaConsumer consumer) {
+        StringBuilder token = tokenBuffers.get();
+        token.setLength(0);
+        Language tokenLanguage = null;
+        int tokenStart = 0;
+        int[] ordinal = new int[1];
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                int end = skipRawTextElement(text, i);
+                if (end != i) {
+                    emitToken(token, tokenLanguage, tokenStart, ordinal, consumer);
+                    tokenLanguage = null;
+                    i = end - 1;
                     continue;
                 }
             }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
+            Language charLanguage = languageOf(c);
+            if (charLanguage != tokenLanguage) {
+                emitToken(token, tokenLanguage, tokenStart, ordinal, consumer);
+                tokenLanguage = charLanguage;
+                tokenStart = i;
             }
+            if (charLanguage != null) {
+                token.append(toLowerCase(c));
+            }
+        }
+        emitToken(token, tokenLanguage, tokenStart, ordinal, consumer);
+    }
 
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
+    private void emitToken(StringBuilder token, Language language, int start, int[] ordinal, LemmaConsumer consumer) {
+        //однобуквенные слова не индексируются
+        if (token.length() > 1) {
+            String normalWord = normalForm(token.toString(), language);
+            if (normalWord != null) {
+                consumer.accept(normalWord, ordinal[0]++, start);
             }
         }
+        token.setLength(0);
+    }
 
-        return lemmas;
+    public interface LemmaConsumer {
+        void accept(String lemma, int ordinal, int offset);
     }
 
-    public boolean isParticle(String word) {
-        List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-        return anyWordBaseBelongToParticle(wordBaseForms);
+    //null для служебных частей речи и слов без нормальной формы
+    private String normalForm(String word, Language language) {
+        String normalWord = lemmaCache.get(word, w -> lemmatize(w, language));
+        return normalWord.equals(LemmaCache.PARTICLE) || normalWord.equals(LemmaCache.NO_NORMAL_FORM) ? null : normalWord;
     }
 
-    public String clearHtmlTags(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("<[^>]+>", "")
-                .trim();
+    private String lemmatize(String word, Language language) {
+        LuceneMorphology luceneMorphology = getMorphology(language);
+        if (anyWordBaseBelongToParticle(luceneMorphology.getMorphInfo(word))) {
+            return LemmaCache.PARTICLE;
+        }
+        List<String> normalForms = luceneMorphology.getNormalForms(word);
+        return normalForms.isEmpty() ? LemmaCache.NO_NORMAL_FORM : normalForms.get(0);
     }
 
-    public String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-я\\s])", " ")
-                .trim()
-                .split("\\s+");
+    private static Language languageOf(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return Language.ENG;
+        }
+        if ((c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я')) {
+            return Language.RUS;
+        }
+        return null;
     }
 
-    public String[] arrayContainsEnglishWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^a-z\\s])", " ")
-                .trim()
-                .split("\\s+");
+    private static char toLowerCase(char c) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'А' && c <= 'Я')) {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
     }
 
-    public String[] arrayContainsAnyWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^a-zа-я\\s])", " ")
-                .trim()
-                .split("\\s+");
+    //Возвращает позицию после закрывающего тега, если в позиции start открывается <script> или <style>,
+    //иначе start
+    private static int skipRawTextElement(String text, int start) {
+        for (String name : rawTextElements) {
+            int nameEnd = start + 1 + name.length();
+            if (!text.regionMatches(true, start + 1, name, 0, name.length()) || nameEnd >= text.length()) {
+                continue;
+            }
+            char next = text.charAt(nameEnd);
+            if (next != '>' && next != '/' && !Character.isWhitespace(next)) {
+                continue;
+            }
+            String closing = "</" + name;
+            for (int i = nameEnd; i <= text.length() - closing.length(); i++) {
+                if (text.charAt(i) == '<' && text.regionMatches(true, i, closing, 0, closing.length())) {
+                    int end = text.indexOf('>', i + closing.length());
+                    return end == -1 ? text.length() : end + 1;
+                }
+            }
+            return text.length();
+        }
+        return start;
     }
 
     private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
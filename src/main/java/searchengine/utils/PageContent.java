@@ -0,0 +1,43 @@
+package searchengine.utils;
+
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Сохраняемое содержимое страницы: заголовок и видимый текст извлекаются один раз при индексации и только они
+//читаются поиском. Исходный HTML хранится сжатым для повторной обработки; html == null - HTML не сохраняется
+public record PageContent(String title, String text, byte[] html) {
+
+    public static PageContent of(Document doc, boolean storeHtml) {
+        return new PageContent(doc.title(), extractText(doc), storeHtml ? compress(doc.outerHtml()) : null);
+    }
+
+    //Текст, по которому строятся леммы; смещения в позиционном индексе указывают в него
+    public static String extractText(Document doc) {
+        return doc.text();
+    }
+
+    public static byte[] compress(String html) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(html.length() / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(html.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static String decompress(byte[] html) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(html))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
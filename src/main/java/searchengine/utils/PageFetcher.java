@@ -0,0 +1,166 @@
+package searchengine.utils;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import searchengine.config.Options;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+//Каждый адрес скачивается один раз: код ответа, заголовки, итоговый адрес после редиректов
+//и тело для разбора берутся из одного ответа.
+//Клиенты HttpClient общие для всего процесса и держат пул keep-alive соединений по хостам,
+//Jsoup только разбирает полученные байты
+@Component
+public class PageFetcher {
+    private final Options options;
+    private final HttpClient redirectingClient;
+    private final HttpClient client;
+
+    public PageFetcher(Options options) {
+        this.options = options;
+        redirectingClient = buildClient(HttpClient.Redirect.NORMAL);
+        client = buildClient(HttpClient.Redirect.NEVER);
+    }
+
+    private HttpClient buildClient(HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(options.getConnectTimeout()))
+                .followRedirects(redirect)
+                .build();
+    }
+
+    public String getUserAgent() {
+        return options.getUserAgent();
+    }
+
+    public FetchedPage fetch(String url, boolean followRedirects) {
+        return fetch(url, followRedirects, null, null);
+    }
+
+    //Условный запрос: если страница не менялась с прошлого скачивания, сервер ответит 304 без тела
+    public FetchedPage fetch(String url, boolean followRedirects, String etag, String lastModified) {
+        try {
+            HttpResponse<InputStream> response = send(url, followRedirects, etag, lastModified);
+
+            int code = response.statusCode();
+            Map<String, String> headers = headersOf(response);
+            HttpStatus status = HttpStatus.resolve(code);
+            String statusMessage = status == null ? "" : status.getReasonPhrase();
+            String finalUrl = response.uri().toString();
+            String contentType = headers.getOrDefault("Content-Type", "text/html");
+
+            //Тело закрывается всегда, чтобы вернуть соединение в пул; распаковывается только то тело, которое читается:
+            //GZIPInputStream сразу читает заголовок и падает на пустом теле ответа 304 или 4xx
+            try (InputStream body = response.body()) {
+                if (code >= 400 || code == 304) {
+                    return new FetchedPage(code, statusMessage, headers, finalUrl, null, null);
+                }
+                if (!isSupportedContentType(contentType)) {
+                    System.out.println("Unsupported content type " + contentType + " for " + url);
+                    return null;
+                }
+                byte[] bytes = readLimited(decode(body, headers.get("Content-Encoding")), options.getMaxBodySize());
+                return new FetchedPage(code, statusMessage, headers, finalUrl, bytes, charsetOf(contentType));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    //Текст ответа без разбора HTML (например, robots.txt) или null, если код ответа не 2xx
+    public String fetchText(String url) {
+        try {
+            HttpResponse<InputStream> response = send(url, true, null, null);
+            Map<String, String> headers = headersOf(response);
+            try (InputStream body = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    return null;
+                }
+                String charset = charsetOf(headers.getOrDefault("Content-Type", ""));
+                return new String(readLimited(decode(body, headers.get("Content-Encoding")), options.getMaxBodySize()),
+                        charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private HttpResponse<InputStream> send(String url, boolean followRedirects, String etag, String lastModified)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(options.getReadTimeout()))
+                .header("User-Agent", options.getUserAgent())
+                .header("Referer", options.getReferrer())
+                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (etag != null && !etag.isEmpty()) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null && !lastModified.isEmpty()) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        return (followRedirects ? redirectingClient : client).send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private Map<String, String> headersOf(HttpResponse<?> response) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    private InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return body;
+        }
+        return switch (contentEncoding.trim().toLowerCase()) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    //Как и Jsoup, тело длиннее maxBodySize обрезается
+    private byte[] readLimited(InputStream body, int maxBodySize) throws IOException {
+        return maxBodySize > 0 ? body.readNBytes(maxBodySize) : body.readAllBytes();
+    }
+
+    private boolean isSupportedContentType(String contentType) {
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/") || type.contains("xml");
+    }
+
+    private String charsetOf(String contentType) {
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                return param.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+//Путь страницы в том виде, в каком он хранится в page.path, и его хэш фиксированной длины для page.path_hash.
+//Хэш - MD5 байтов UTF-8, тот же, что UNHEX(MD5(path)) в MySQL, поэтому старые строки заполняются миграцией V1
+public final class PagePath {
+
+    private PagePath() {
+    }
+
+    //Нижний регистр и без завершающего '/', корень сайта - "/"
+    public static String normalize(String path) {
+        String normalized = path.trim().toLowerCase(Locale.ROOT);
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (!normalized.startsWith("/")) {
+            normalized = "/" + normalized;
+        }
+        return normalized;
+    }
+
+    public static byte[] hash(String normalizedPath) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(normalizedPath.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package searchengine.utils;
+
+//Поля страницы для выдачи. У страниц, сохраненных до выделения текста, text == null и есть только исходный HTML в content
+public record PageText(String path, String title, String text, String content) {
+
+    public boolean isLegacy() {
+        return text == null;
+    }
+}
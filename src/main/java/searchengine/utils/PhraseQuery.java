@@ -0,0 +1,59 @@
+package searchengine.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Фраза запроса в кавычках: леммы должны идти на странице по порядку подряд, а с ~N после кавычек -
+//с разрывом не больше N индексируемых слов между соседними леммами. Служебные слова не индексируются и не считаются
+public record PhraseQuery(List<String> lemmas, int slop) {
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"(?:~(\\d{1,3}))?");
+
+    public static List<PhraseQuery> parse(String query, LemmaFinder lemmaFinder) {
+        List<PhraseQuery> phrases = new ArrayList<>();
+        Matcher matcher = PHRASE.matcher(query);
+        while (matcher.find()) {
+            List<String> lemmas = lemmaFinder.lemmaSequence(matcher.group(1));
+            //фраза из одной леммы ничем не отличается от обычного слова запроса
+            if (lemmas.size() > 1) {
+                phrases.add(new PhraseQuery(lemmas, matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2))));
+            }
+        }
+        return phrases;
+    }
+
+    //Позиции лемм одной страницы; для каждой следующей леммы остаются вхождения,
+    //до которых можно дойти от какого-нибудь уже найденного вхождения предыдущей
+    public boolean matches(Map<String, Positions> positions) {
+        int[] reachable = ordinals(positions, lemmas.get(0));
+        for (int i = 1; i < lemmas.size() && reachable.length > 0; i++) {
+            int[] next = ordinals(positions, lemmas.get(i));
+            int[] kept = new int[next.length];
+            int count = 0;
+            int j = 0;
+            for (int ordinal : next) {
+                while (j < reachable.length && reachable[j] < ordinal - slop - 1) {
+                    j++;
+                }
+                if (j < reachable.length && reachable[j] < ordinal) {
+                    kept[count++] = ordinal;
+                }
+            }
+            reachable = Arrays.copyOf(kept, count);
+        }
+        return reachable.length > 0;
+    }
+
+    private static int[] ordinals(Map<String, Positions> positions, String lemma) {
+        Positions lemmaPositions = positions.get(lemma);
+        return lemmaPositions == null ? new int[0] : lemmaPositions.ordinals();
+    }
+
+    @Override
+    public String toString() {
+        return '"' + String.join(" ", lemmas) + "\"~" + slop;
+    }
+}
@@ -0,0 +1,105 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Вхождения леммы на странице по порядку: номер слова среди индексируемых слов страницы (для фраз и близости)
+//и смещение начала слова в тексте страницы page.text (для сниппета). Обе величины пишутся разностями varint, обычно 2-3 байта на вхождение
+public final class Positions {
+    private final byte[] data;
+    private final int size;
+
+    private Positions(byte[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    public static Positions decode(byte[] data) {
+        int size = 0;
+        for (byte b : data) {
+            if (b >= 0) {
+                size++;
+            }
+        }
+        return new Positions(data, size / 2);
+    }
+
+    public byte[] encode() {
+        return data;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] ordinals() {
+        return read(0);
+    }
+
+    public int[] offsets() {
+        return read(1);
+    }
+
+    //Число вхождений каждой леммы - rank строки index
+    public static Map<String, Integer> counts(Map<String, Positions> positions) {
+        Map<String, Integer> counts = new HashMap<>(positions.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Positions> entry : positions.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    private int[] read(int field) {
+        int[] values = new int[size];
+        int pos = 0;
+        int[] last = new int[2];
+        for (int i = 0; i < size; i++) {
+            for (int f = 0; f < 2; f++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    value |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                last[f] += value;
+            }
+            values[i] = last[field];
+        }
+        return values;
+    }
+
+    //Вхождения добавляются по возрастанию номера слова
+    public static final class Builder {
+        private byte[] data = new byte[8];
+        private int length;
+        private int size;
+        private int lastOrdinal;
+        private int lastOffset;
+
+        public void add(int ordinal, int offset) {
+            writeVarInt(ordinal - lastOrdinal);
+            writeVarInt(offset - lastOffset);
+            lastOrdinal = ordinal;
+            lastOffset = offset;
+            size++;
+        }
+
+        public Positions build() {
+            return new Positions(Arrays.copyOf(data, length), size);
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                data[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+
+//Неизменяемый список страниц одной леммы, упорядоченный по id страницы. Хранится в byte[]:
+//разность с предыдущим id страницы и rank записываются varint, обычно 2-3 байта на страницу
+public final class PostingList {
+    public static final PostingList EMPTY = new PostingList(new byte[0], 0, 0);
+
+    private final byte[] data;
+    private final int length;
+    private final int size;
+
+    private PostingList(byte[] data, int length, int size) {
+        this.data = data;
+        this.length = length;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int bytes() {
+        return length;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    //Новый список с изменениями: pageId -> rank, rank <= 0 удаляет страницу из списка
+    public PostingList merge(NavigableMap<Integer, Integer> changes) {
+        Builder builder = new Builder(length + changes.size() * 3);
+        Cursor cursor = cursor();
+        boolean hasNext = cursor.next();
+        for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+            while (hasNext && cursor.pageId < change.getKey()) {
+                builder.add(cursor.pageId, cursor.rank);
+                hasNext = cursor.next();
+            }
+            if (hasNext && cursor.pageId == change.getKey()) {
+                hasNext = cursor.next();
+            }
+            if (change.getValue() > 0) {
+                builder.add(change.getKey(), change.getValue());
+            }
+        }
+        while (hasNext) {
+            builder.add(cursor.pageId, cursor.rank);
+            hasNext = cursor.next();
+        }
+        return builder.build();
+    }
+
+    //Последовательное чтение списка; advance пропускает страницы с меньшим id
+    public final class Cursor {
+        private int pos;
+        private int pageId;
+        private int rank;
+        private boolean started;
+        private boolean exhausted;
+
+        public boolean next() {
+            if (pos >= length) {
+                exhausted = true;
+                return false;
+            }
+            pageId += readVarInt();
+            rank = readVarInt();
+            started = true;
+            return true;
+        }
+
+        //Переходит к первой странице с id >= target, начиная с текущей; false, если таких нет
+        public boolean advance(int target) {
+            if (exhausted) {
+                return false;
+            }
+            if (started && pageId >= target) {
+                return true;
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int getPageId() {
+            return pageId;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    //Страницы добавляются по возрастанию id
+    public static final class Builder {
+        private byte[] data;
+        private int length;
+        private int size;
+        private int lastPageId;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        public void add(int pageId, int rank) {
+            if (size > 0 && pageId <= lastPageId) {
+                throw new IllegalArgumentException("Page ids must be increasing: " + pageId + " after " + lastPageId);
+            }
+            writeVarInt(pageId - lastPageId);
+            writeVarInt(Math.max(rank, 0));
+            lastPageId = pageId;
+            size++;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public PostingList build() {
+            return size == 0 ? EMPTY : new PostingList(Arrays.copyOf(data, length), length, size);
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                data[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package searchengine.utils;
+
+import java.util.Locale;
+
+public class RobotsTxt {
+
+    private RobotsTxt() {
+        throw new RuntimeException("Disallow construct");
+    }
+
+    //Crawl-delay в секундах из группы, подходящей под userAgent, либо из группы "*"; 0, если не задан
+    public static double parseCrawlDelay(String robotsTxt, String userAgent) {
+        String agent = userAgent == null ? "" : userAgent.toLowerCase(Locale.ROOT);
+        double anyAgentDelay = 0;
+        double ownDelay = -1;
+        boolean inAnyGroup = false, inOwnGroup = false, groupHasRules = false;
+        for (String line : robotsTxt.split("\r?\n|\r")) {
+            int comment = line.indexOf('#');
+            if (comment != -1) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (key.equals("user-agent")) {
+                if (groupHasRules) {
+                    inAnyGroup = false;
+                    inOwnGroup = false;
+                    groupHasRules = false;
+                }
+                String groupAgent = value.toLowerCase(Locale.ROOT);
+                inAnyGroup |= groupAgent.equals("*");
+                inOwnGroup |= !groupAgent.isEmpty() && !groupAgent.equals("*") && agent.contains(groupAgent);
+                continue;
+            }
+            groupHasRules = true;
+            if (!key.equals("crawl-delay")) {
+                continue;
+            }
+            double delay;
+            try {
+                delay = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (inOwnGroup) {
+                ownDelay = delay;
+            } else if (inAnyGroup) {
+                anyAgentDelay = delay;
+            }
+        }
+        return ownDelay >= 0 ? ownDelay : anyAgentDelay;
+    }
+}
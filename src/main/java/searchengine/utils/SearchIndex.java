@@ -0,0 +1,155 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repositories.PageIndexRepository;
+import searchengine.repositories.SiteRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Обратные индексы сайтов в памяти для поиска. Индексы рабочих сайтов загружаются из БД в фоне при запуске
+//и после переключения поколения; если поиск пришел раньше, индекс загружается при первом поиске по сайту.
+//После загрузки запись страниц (обход, indexPage) обновляет его сразу после фиксации транзакции.
+//Записи в сайты, индекс которых не загружен (например, в теневые поколения), пропускаются:
+//при загрузке они и так будут прочитаны из БД
+@Component
+public class SearchIndex {
+    private final PageIndexRepository pageIndexRepository;
+    private final SiteRepository siteRepository;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "search-index-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    //Счетчик изменений данных сайта, в том числе сайтов с незагруженным индексом; по нему устаревает кэш поиска
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public SearchIndex(PageIndexRepository pageIndexRepository, SiteRepository siteRepository) {
+        this.pageIndexRepository = pageIndexRepository;
+        this.siteRepository = siteRepository;
+    }
+
+    @PostConstruct
+    public void warmAll() {
+        loader.execute(() -> {
+            for (Site site : siteRepository.findAllSites()) {
+                if (!site.isShadow() && site.getStatus() == Status.INDEXED) {
+                    warm(site.getId());
+                }
+            }
+        });
+    }
+
+    //Загрузка индекса сайта вне потоков поиска: чтение из БД не укладывается в ограничение времени поиска по сайту
+    public void warm(int siteId) {
+        loader.execute(() -> {
+            try {
+                site(siteId);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    public SiteIndex site(int siteId) {
+        SiteIndex created = new SiteIndex();
+        SiteIndex index = sites.putIfAbsent(siteId, created);
+        if (index == null) {
+            index = created;
+            load(siteId, index);
+        }
+        try {
+            index.getLoaded().join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Search index of site " + siteId + " is not loaded", e.getCause());
+        }
+        return index;
+    }
+
+    public long generation(int siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private void changed(int siteId) {
+        generations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    //Поколение меняется после изменения индекса (БД к этому моменту уже зафиксирована): поиск, начатый раньше,
+    //запомнит старое поколение, и его ответ не попадет в кеш под новым
+    public void addPages(int siteId, Map<Integer, Map<String, Integer>> lemmasByPage) {
+        SiteIndex index = sites.get(siteId);
+        if (index != null) {
+            for (Map.Entry<Integer, Map<String, Integer>> page : lemmasByPage.entrySet()) {
+                for (Map.Entry<String, Integer> lemma : page.getValue().entrySet()) {
+                    index.add(page.getKey(), lemma.getKey().toLowerCase(Locale.ROOT), lemma.getValue());
+                }
+            }
+        }
+        changed(siteId);
+    }
+
+    public void removePage(int siteId, int pageId, Collection<String> lemmas) {
+        SiteIndex index = sites.get(siteId);
+        if (index != null) {
+            for (String lemma : lemmas) {
+                index.remove(pageId, lemma);
+            }
+        }
+        changed(siteId);
+    }
+
+    public void evict(int siteId) {
+        sites.remove(siteId);
+        changed(siteId);
+    }
+
+    public Map<Integer, SiteIndex> getSites() {
+        return sites;
+    }
+
+    private void load(int siteId, SiteIndex index) {
+        long start = System.currentTimeMillis();
+        try {
+            String[] current = {null};
+            PostingList.Builder[] builder = {new PostingList.Builder()};
+            pageIndexRepository.forEachPosting(siteId, (lemma, pageId, rank) -> {
+                if (!lemma.equals(current[0])) {
+                    if (current[0] != null) {
+                        index.setLoaded(current[0].toLowerCase(Locale.ROOT), builder[0].build());
+                    }
+                    current[0] = lemma;
+                    builder[0] = new PostingList.Builder();
+                }
+                builder[0].add(pageId, rank);
+            });
+            if (current[0] != null) {
+                index.setLoaded(current[0].toLowerCase(Locale.ROOT), builder[0].build());
+            }
+            index.markLoaded();
+            System.out.println("Search index of site " + siteId + " loaded in " + (System.currentTimeMillis() - start)
+                    + " ms: lemmas " + index.getLemmaCount() + ", postings " + index.getPostingCount()
+                    + ", bytes " + index.getBytes());
+        } catch (RuntimeException e) {
+            sites.remove(siteId, index);
+            index.markFailed(e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.Constants;
+import searchengine.dto.statistics.DataSearchItem;
+import searchengine.dto.statistics.SearchResponse;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+//Кэш ответов поиска с вытеснением давно не использованных (LRU) по числу записей и оценке занятой памяти.
+//Ключ - нормализованный набор лемм запроса, фильтр сайта и окно выдачи. Вместе с ответом хранятся
+//поколения индексов сайтов, по которым он построен (SearchIndex.generation): если любой из этих сайтов
+//с тех пор менялся или набор доступных для поиска сайтов стал другим, запись считается устаревшей
+@Component
+public class SearchResultCache {
+    private static final int ITEM_OVERHEAD_BYTES = 128;
+
+    private final int maxEntries = Constants.SEARCH_CACHE_ENTRIES;
+    private final long maxBytes = Constants.SEARCH_CACHE_BYTES;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public static String key(Collection<String> lemmas, String site, int offset, int limit) {
+        return String.join(" ", new TreeSet<>(lemmas)) + '\u0000' + site + '\u0000' + offset + '\u0000' + limit;
+    }
+
+    //generations нужно получить до построения ответа, тогда изменения во время поиска не останутся незамеченными
+    public synchronized SearchResponse get(String key, Map<Integer, Long> generations) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.generations().equals(generations)) {
+            remove(key, entry);
+            invalidations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response();
+    }
+
+    public synchronized void put(String key, Map<Integer, Long> generations, SearchResponse response) {
+        long size = sizeOf(key, response);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry old = entries.remove(key);
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        entries.put(key, new Entry(Map.copyOf(generations), response, size));
+        bytes += size;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= evicted.bytes();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.bytes();
+    }
+
+    private static long sizeOf(String key, SearchResponse response) {
+        long size = ITEM_OVERHEAD_BYTES + key.length() * 2L;
+        if (response.getData() != null) {
+            for (DataSearchItem item : response.getData()) {
+                size += ITEM_OVERHEAD_BYTES + 2L * (length(item.getSite()) + length(item.getSiteName())
+                        + length(item.getUri()) + length(item.getTitle()) + length(item.getSnippet()));
+            }
+        }
+        return size;
+    }
+
+    private static int length(String str) {
+        return str == null ? 0 : str.length();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return maxEntries;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    private record Entry(Map<Integer, Long> generations, SearchResponse response, long bytes) {
+    }
+}
@@ -0,0 +1,123 @@
+package searchengine.utils;
+
+import lombok.Getter;
+import searchengine.config.Constants;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Состояние обхода одного сайта в CrawlPipeline
+@Getter
+public class SiteCrawl {
+    private final int siteId;
+    private final String name;
+    //Вес сайта при распределении потоков скачивания между сайтами
+    private final int weight;
+    private final String rootUrl;
+    private final String protocol;
+    private final String host;
+    //Ссылки за пределами этого префикса не обходятся
+    private final String linkPrefix;
+    //Адреса, принятые в обход и еще не прошедшие все стадии
+    private final AtomicInteger pending = new AtomicInteger();
+    //Те же адреса поименно, для сохранения состояния обхода
+    private final Set<String> pendingUrls = ConcurrentHashMap.newKeySet();
+    //Адреса, уже принятые в обход; адрес занимается до скачивания, поэтому скачивается один раз
+    private final UrlFingerprintSet visited = new UrlFingerprintSet();
+    //Прием адреса (visited + pendingUrls) и завершение страницы берут чтение, снимок для checkpoint - запись,
+    //чтобы снимок не попал между занятием адреса и его постановкой в pendingUrls
+    private final ReentrantReadWriteLock frontierLock = new ReentrantReadWriteLock();
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicInteger pagesSaved = new AtomicInteger();
+    //Страницы прошлой индексации по пути; пусто при полной индексации
+    private final Map<String, StoredPage> storedPages;
+    private final AtomicInteger pagesUnchanged = new AtomicInteger();
+    private final AtomicInteger pagesRemoved = new AtomicInteger();
+    //Страницы, которые не удалось записать в БД; такой обход не заменяет рабочее поколение и не дает INDEXED
+    private final AtomicInteger pagesFailed = new AtomicInteger();
+    //Рабочее поколение сайта, которое заменит этот обход, или NOTFOUND, если обход пишет прямо в рабочее
+    private final int replacesSiteId;
+    private final AtomicBoolean robotsLoaded = new AtomicBoolean();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean stopped;
+    private volatile boolean completed;
+
+    public SiteCrawl(int siteId, String name, String url, int weight, Map<String, StoredPage> storedPages, int replacesSiteId) {
+        this.siteId = siteId;
+        this.storedPages = storedPages;
+        this.replacesSiteId = replacesSiteId;
+        this.name = name;
+        this.weight = Math.max(1, weight);
+        rootUrl = removeLastSymbol(url, '/').toLowerCase();
+        URL homeURL;
+        try {
+            homeURL = new URL(rootUrl);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+        protocol = homeURL.getProtocol().toLowerCase();
+        host = homeURL.getHost().toLowerCase();
+        linkPrefix = rootUrl;
+    }
+
+    public boolean isInside(String url) {
+        if (!url.startsWith(linkPrefix)) {
+            return false;
+        }
+        if (url.length() == linkPrefix.length()) {
+            return true;
+        }
+        char next = url.charAt(linkPrefix.length());
+        return next == '/' || next == '?';
+    }
+
+    public String pathOf(String url) {
+        return PagePath.normalize(url.substring(rootUrl.length()));
+    }
+
+    public String urlOf(String path) {
+        return path.equals("/") ? rootUrl : rootUrl + path;
+    }
+
+    public boolean isIncremental() {
+        return !storedPages.isEmpty();
+    }
+
+    public boolean isShadow() {
+        return replacesSiteId != Constants.NOTFOUND;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void markCompleted() {
+        completed = true;
+    }
+
+    void markDone() {
+        done.countDown();
+    }
+
+    public static String removeLastSymbol(String str, char charToRemove) {
+        str = str.trim();
+        if (!str.isEmpty()) {
+            if (str.charAt(str.length() - 1) == charToRemove) {
+                str = str.substring(0, str.length() - 1);
+            }
+        }
+        return str;
+    }
+}
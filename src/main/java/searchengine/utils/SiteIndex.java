@@ -0,0 +1,186 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Обратный индекс одного сайта в памяти: лемма -> PostingList.
+//Записи индексации копятся в небольшой карте изменений леммы и вливаются в сжатый список
+//при чтении или когда изменений становится больше COMPACT_THRESHOLD.
+//Операции идемпотентны (страница с rank либо есть, либо нет), поэтому записи, пришедшие во время загрузки
+//из БД, можно накладывать поверх загруженных списков
+public class SiteIndex {
+    private static final int COMPACT_THRESHOLD = 256;
+
+    private final ConcurrentHashMap<String, Postings> lemmas = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile boolean loading = true;
+
+    public void add(int pageId, String lemma, int rank) {
+        lemmas.computeIfAbsent(lemma, l -> new Postings()).change(pageId, rank, !loading);
+    }
+
+    //Во время загрузки удаление запоминается и для еще не загруженной леммы, иначе загрузчик вернет страницу в список
+    public void remove(int pageId, String lemma) {
+        Postings postings = loading ? lemmas.computeIfAbsent(lemma, l -> new Postings()) : lemmas.get(lemma);
+        if (postings != null) {
+            postings.change(pageId, 0, !loading);
+        }
+    }
+
+    public PostingList postings(String lemma) {
+        Postings postings = lemmas.get(lemma);
+        return postings == null ? PostingList.EMPTY : postings.compacted();
+    }
+
+    //Число страниц с каждой леммой запроса одним обращением к словарю; отсутствующая лемма дает 0
+    public Map<String, Integer> frequencies(Collection<String> query) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String lemma : query) {
+            frequencies.put(lemma, postings(lemma).size());
+        }
+        return frequencies;
+    }
+
+    //Страницы, содержащие все леммы, и сумма rank лемм на каждой странице - за один проход по спискам.
+    //Леммы лучше передавать по возрастанию частоты: первый список задает кандидатов, остальные только проверяют их
+    public Matches match(List<String> query) {
+        if (query.isEmpty()) {
+            return Matches.EMPTY;
+        }
+        PostingList firstList = postings(query.get(0));
+        PostingList.Cursor first = firstList.cursor();
+        int[] pages = new int[firstList.size()];
+        int[] ranks = new int[firstList.size()];
+        int count = 0;
+        while (first.next()) {
+            pages[count] = first.getPageId();
+            ranks[count++] = first.getRank();
+        }
+        for (int i = 1; i < query.size() && count > 0; i++) {
+            PostingList.Cursor cursor = postings(query.get(i)).cursor();
+            int kept = 0;
+            for (int j = 0; j < count; j++) {
+                if (!cursor.advance(pages[j])) {
+                    break;
+                }
+                if (cursor.getPageId() == pages[j]) {
+                    pages[kept] = pages[j];
+                    ranks[kept++] = ranks[j] + cursor.getRank();
+                }
+            }
+            count = kept;
+        }
+        int maxRank = 0;
+        for (int j = 0; j < count; j++) {
+            maxRank = Math.max(maxRank, ranks[j]);
+        }
+        return new Matches(Arrays.copyOf(pages, count), Arrays.copyOf(ranks, count), maxRank);
+    }
+
+    public int getLemmaCount() {
+        return lemmas.size();
+    }
+
+    public long getPostingCount() {
+        long count = 0;
+        for (Postings postings : lemmas.values()) {
+            count += postings.list.size();
+        }
+        return count;
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Postings postings : lemmas.values()) {
+            bytes += postings.list.bytes();
+        }
+        return bytes;
+    }
+
+    //Загруженный из БД список леммы; вызывается загрузчиком до markLoaded
+    void setLoaded(String lemma, PostingList list) {
+        lemmas.computeIfAbsent(lemma, l -> new Postings()).list = list;
+    }
+
+    void markLoaded() {
+        loading = false;
+        loaded.complete(null);
+    }
+
+    void markFailed(Throwable e) {
+        loaded.completeExceptionally(e);
+    }
+
+    CompletableFuture<Void> getLoaded() {
+        return loaded;
+    }
+
+    //ranks[i] - абсолютная релевантность страницы pageIds[i], maxRank - наибольшая из них
+    public record Matches(int[] pageIds, int[] ranks, int maxRank) {
+        static final Matches EMPTY = new Matches(new int[0], new int[0], 0);
+
+        public int size() {
+            return pageIds.length;
+        }
+
+        //Позиции k самых релевантных страниц по убыванию rank (при равенстве - по возрастанию id страницы).
+        //Куча из k элементов: O(n log k) вместо сортировки всех совпадений
+        public int[] top(int k) {
+            k = Math.min(k, pageIds.length);
+            if (k <= 0) {
+                return new int[0];
+            }
+            Comparator<Integer> byRelevance = (a, b) -> ranks[a] != ranks[b] ? Integer.compare(ranks[a], ranks[b])
+                    : Integer.compare(pageIds[b], pageIds[a]);
+            PriorityQueue<Integer> heap = new PriorityQueue<>(k, byRelevance);
+            for (int i = 0; i < pageIds.length; i++) {
+                if (heap.size() < k) {
+                    heap.add(i);
+                } else if (byRelevance.compare(i, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(i);
+                }
+            }
+            int[] top = new int[heap.size()];
+            for (int i = top.length - 1; i >= 0; i--) {
+                top[i] = heap.poll();
+            }
+            return top;
+        }
+    }
+
+    private static final class Postings {
+        private volatile PostingList list = PostingList.EMPTY;
+        private TreeMap<Integer, Integer> changes;
+
+        private synchronized void change(int pageId, int rank, boolean compactAllowed) {
+            if (changes == null) {
+                changes = new TreeMap<>();
+            }
+            changes.put(pageId, rank);
+            if (compactAllowed && changes.size() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        }
+
+        private synchronized PostingList compacted() {
+            compact();
+            return list;
+        }
+
+        private void compact() {
+            if (changes != null) {
+                list = list.merge(changes);
+                changes = null;
+            }
+        }
+    }
+}
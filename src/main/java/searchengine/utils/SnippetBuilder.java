@@ -0,0 +1,205 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.Constants;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+//Сниппет по тексту страницы: вхождения лемм запроса берутся из позиционного индекса или из одного прохода
+//по тексту, затем выбираются окна, покрывающие больше всего разных лемм запроса, и пишутся в буфер потока
+@Component
+public class SnippetBuilder {
+    private static final int WINDOW = Constants.SNIPPET_SYMBOLS_COUNT * 2;
+    private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final LemmaFinder lemmaFinder;
+
+    public SnippetBuilder(LemmaFinder lemmaFinder) {
+        this.lemmaFinder = lemmaFinder;
+    }
+
+    //Леммы запроса с номерами; строится один раз на запрос и используется для всех страниц выдачи
+    public record Terms(Map<String, Integer> index) {
+        public static Terms of(Collection<String> lemmas) {
+            Map<String, Integer> index = new HashMap<>();
+            for (String lemma : lemmas) {
+                index.putIfAbsent(lemma, index.size());
+            }
+            return new Terms(index);
+        }
+
+        public int size() {
+            return index.size();
+        }
+    }
+
+    //positions - позиции лемм запроса на странице; если их нет, текст размечается морфологией.
+    //Пустая строка, если ни одна лемма запроса в тексте не встретилась
+    public String build(String text, Terms terms, Map<String, Positions> positions) {
+        long[] occurrences = positions.isEmpty() ? scan(text, terms) : fromPositions(text, terms, positions);
+        if (occurrences.length == 0) {
+            return "";
+        }
+        int[] offsets = new int[occurrences.length];
+        int[] termIds = new int[occurrences.length];
+        for (int i = 0; i < occurrences.length; i++) {
+            offsets[i] = (int) (occurrences[i] >>> 32);
+            termIds[i] = (int) occurrences[i];
+        }
+
+        //Жадный выбор окон: каждое следующее покрывает больше всего еще не показанных лемм
+        boolean[] shown = new boolean[terms.size()];
+        int[][] windows = new int[Constants.SNIPPET_FRAGMENTS][];
+        int count = 0;
+        while (count < windows.length) {
+            int[] window = bestWindow(text, offsets, termIds, shown, windows, count);
+            if (window == null) {
+                break;
+            }
+            for (int i = window[2]; i <= window[3]; i++) {
+                shown[termIds[i]] = true;
+            }
+            windows[count++] = window;
+        }
+        Arrays.sort(windows, 0, count, (a, b) -> Integer.compare(a[0], b[0]));
+
+        StringBuilder snippet = buffers.get();
+        snippet.setLength(0);
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                snippet.append("\n").append("\r");
+            }
+            appendWindow(snippet, text, offsets, windows[w][0], windows[w][1]);
+        }
+        return snippet.toString();
+    }
+
+    //Окно [begin, end) текста и индексы первого и последнего вхождения в нем; null, если новых лемм не осталось
+    private int[] bestWindow(String text, int[] offsets, int[] termIds, boolean[] shown, int[][] chosen, int chosenCount) {
+        int[] counts = new int[shown.length];
+        int distinct = 0;
+        int bestDistinct = 0;
+        int bestSize = 0;
+        int bestLeft = -1;
+        int bestRight = -1;
+        int left = 0;
+        for (int right = 0; right < offsets.length; right++) {
+            if (!shown[termIds[right]] && counts[termIds[right]]++ == 0) {
+                distinct++;
+            }
+            while (left < right && wordEnd(text, offsets[right]) - offsets[left] > WINDOW) {
+                if (!shown[termIds[left]] && --counts[termIds[left]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && distinct > 0 && right - left + 1 > bestSize)) {
+                if (!overlaps(offsets[left], wordEnd(text, offsets[right]), chosen, chosenCount)) {
+                    bestDistinct = distinct;
+                    bestSize = right - left + 1;
+                    bestLeft = left;
+                    bestRight = right;
+                }
+            }
+        }
+        if (bestLeft < 0) {
+            return null;
+        }
+
+        //Вхождения окна ставятся в середину, границы сдвигаются к пробелам, чтобы не резать слова
+        int first = offsets[bestLeft];
+        int last = wordEnd(text, offsets[bestRight]);
+        int begin = Math.max(0, first - (WINDOW - (last - first)) / 2);
+        int end = Math.min(text.length(), Math.max(last, begin + WINDOW));
+        for (int i = 0; i < chosenCount; i++) {
+            if (chosen[i][1] <= first) {
+                begin = Math.max(begin, chosen[i][1]);
+            } else if (chosen[i][0] >= last) {
+                end = Math.min(end, chosen[i][0]);
+            }
+        }
+        while (begin < first && begin > 0 && Character.isLetterOrDigit(text.charAt(begin - 1))) {
+            begin++;
+        }
+        while (end > last && end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+            end--;
+        }
+        return new int[]{begin, end, bestLeft, bestRight};
+    }
+
+    private static boolean overlaps(int begin, int end, int[][] chosen, int chosenCount) {
+        for (int i = 0; i < chosenCount; i++) {
+            if (begin < chosen[i][1] && end > chosen[i][0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendWindow(StringBuilder snippet, String text, int[] offsets, int begin, int end) {
+        int from = Arrays.binarySearch(offsets, begin);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int last = begin;
+        for (int i = from; i < offsets.length && offsets[i] < end; i++) {
+            int wordEnd = wordEnd(text, offsets[i]);
+            if (offsets[i] < last || wordEnd > end) {
+                continue;
+            }
+            snippet.append(text, last, offsets[i]).append("<b>").append(text, offsets[i], wordEnd).append("</b>");
+            last = wordEnd;
+        }
+        snippet.append(text, last, end);
+    }
+
+    private static int wordEnd(String text, int offset) {
+        int end = offset;
+        while (end < text.length() && Character.isLetter(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    //Вхождения упакованы в long: смещение в старших 32 битах, номер леммы запроса в младших, по возрастанию смещения
+    private long[] scan(String text, Terms terms) {
+        long[][] occurrences = {new long[16]};
+        int[] size = new int[1];
+        lemmaFinder.forEachLemma(text, (lemma, ordinal, offset) -> {
+            Integer term = terms.index().get(lemma);
+            if (term != null) {
+                if (size[0] == occurrences[0].length) {
+                    occurrences[0] = Arrays.copyOf(occurrences[0], size[0] * 2);
+                }
+                occurrences[0][size[0]++] = ((long) offset << 32) | term;
+            }
+        });
+        return Arrays.copyOf(occurrences[0], size[0]);
+    }
+
+    private static long[] fromPositions(String text, Terms terms, Map<String, Positions> positions) {
+        int total = 0;
+        for (Positions lemmaPositions : positions.values()) {
+            total += lemmaPositions.size();
+        }
+        long[] occurrences = new long[total];
+        int size = 0;
+        for (Map.Entry<String, Positions> entry : positions.entrySet()) {
+            Integer term = terms.index().get(entry.getKey());
+            if (term == null) {
+                continue;
+            }
+            for (int offset : entry.getValue().offsets()) {
+                if (offset < text.length()) {
+                    occurrences[size++] = ((long) offset << 32) | term;
+                }
+            }
+        }
+        long[] sorted = Arrays.copyOf(occurrences, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
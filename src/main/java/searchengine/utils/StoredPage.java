@@ -0,0 +1,9 @@
+package searchengine.utils;
+
+//Сохраненная ранее страница: id и данные для условного запроса при повторной индексации
+public record StoredPage(int id, String etag, String lastModified, Long contentHash) {
+
+    public boolean isUnchanged(FetchedPage page) {
+        return page.isNotModified() || (contentHash != null && contentHash == page.contentHash());
+    }
+}
@@ -0,0 +1,160 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+
+//Множество 64-битных отпечатков адресов. Хранится в массивах long с открытой адресацией,
+//разбитых на сегменты со своей блокировкой, поэтому на адрес уходит около 16 байт
+//вместо строки и узла хэш-таблицы
+public class UrlFingerprintSet {
+    private static final int SEGMENTS = 64;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public UrlFingerprintSet() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    //Отпечаток строки: FNV-1a с финальным перемешиванием из MurmurHash3
+    public static long fingerprint(CharSequence str) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); i++) {
+            h ^= str.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    //Тот же отпечаток для байтов, например тела ответа
+    public static long fingerprint(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    //true, если отпечатка еще не было; проверка и добавление выполняются атомарно
+    public boolean add(long fingerprint) {
+        Segment segment = segments[(int) fingerprint & (SEGMENTS - 1)];
+        synchronized (segment) {
+            return segment.add(fingerprint);
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        Segment segment = segments[(int) fingerprint & (SEGMENTS - 1)];
+        synchronized (segment) {
+            return segment.contains(fingerprint);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    //Копия всех отпечатков, например для сохранения состояния обхода
+    public long[] toArray() {
+        long[] result = new long[0];
+        int n = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                if (n + segment.size > result.length) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, n + segment.size));
+                }
+                if (segment.hasZero) {
+                    result[n++] = 0;
+                }
+                for (long fingerprint : segment.table) {
+                    if (fingerprint != 0) {
+                        result[n++] = fingerprint;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static final class Segment {
+        private long[] table = new long[16];
+        private int size;
+        private boolean hasZero;
+
+        private boolean add(long fingerprint) {
+            if (fingerprint == 0) {
+                if (hasZero) {
+                    return false;
+                }
+                hasZero = true;
+                size++;
+                return true;
+            }
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int i = slot(fingerprint, mask);
+            while (table[i] != 0) {
+                if (table[i] == fingerprint) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+            size++;
+            return true;
+        }
+
+        private boolean contains(long fingerprint) {
+            if (fingerprint == 0) {
+                return hasZero;
+            }
+            int mask = table.length - 1;
+            int i = slot(fingerprint, mask);
+            while (table[i] != 0) {
+                if (table[i] == fingerprint) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint == 0) {
+                    continue;
+                }
+                int i = slot(fingerprint, mask);
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = fingerprint;
+            }
+        }
+
+        //Младшие биты уже выбрали сегмент, для позиции в таблице берутся старшие
+        private static int slot(long fingerprint, int mask) {
+            return (int) (fingerprint >>> 32) & mask;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+create table IF NOT EXISTS page (id integer not null auto_increment, code integer not null, content MEDIUMTEXT not null, path TEXT not null, site_id integer not null, primary key (id));
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'idx_path'
+    )
+    ,'select ''index idx_path exists'' _______;'
+    ,'create index idx_path on search_engine.page(path(767));') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+-- Дубликаты лемм сливаются в лемму с наименьшим id: ее frequency - сумма частот дубликатов
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'lemma' and index_name like 'uk_lemma_site_lemma'
+    )
+    ,'select ''index uk_lemma_site_lemma exists'' _______;'
+    ,'update lemma l join (select site_id, lemma, min(id) id, sum(frequency) frequency from lemma group by site_id, lemma having count(*) > 1) k on k.id = l.id set l.frequency = k.frequency;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'lemma' and index_name like 'uk_lemma_site_lemma'
+    )
+    ,'select ''index uk_lemma_site_lemma exists'' _______;'
+    ,'update `index` i join lemma l on i.lemma_id = l.id join (select site_id, lemma, min(id) id from lemma group by site_id, lemma having count(*) > 1) k on k.site_id = l.site_id and k.lemma = l.lemma set i.lemma_id = k.id where l.id <> k.id;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'lemma' and index_name like 'uk_lemma_site_lemma'
+    )
+    ,'select ''index uk_lemma_site_lemma exists'' _______;'
+    ,'delete l1 from lemma l1 join lemma l2 on l1.site_id = l2.site_id and l1.lemma = l2.lemma and l1.id > l2.id;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'lemma' and index_name like 'uk_lemma_site_lemma'
+    )
+    ,'select ''index uk_lemma_site_lemma exists'' _______;'
+    ,'create unique index uk_lemma_site_lemma on lemma(site_id, lemma);') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+-- Строки index одной страницы и леммы сливаются в строку с наименьшим id: ее rank - сумма rank дубликатов
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'index' and index_name like 'uk_index_page_lemma'
+    )
+    ,'select ''index uk_index_page_lemma exists'' _______;'
+    ,'update `index` i join (select page_id, lemma_id, min(id) id, sum(`rank`) `rank` from `index` group by page_id, lemma_id having count(*) > 1) k on k.id = i.id set i.`rank` = k.`rank`;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'index' and index_name like 'uk_index_page_lemma'
+    )
+    ,'select ''index uk_index_page_lemma exists'' _______;'
+    ,'delete i1 from `index` i1 join `index` i2 on i1.page_id = i2.page_id and i1.lemma_id = i2.lemma_id and i1.id > i2.id;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'index' and index_name like 'uk_index_page_lemma'
+    )
+    ,'select ''index uk_index_page_lemma exists'' _______;'
+    ,'create unique index uk_index_page_lemma on `index`(page_id, lemma_id);') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select * from information_schema.columns
+        where table_schema = DATABASE() and
+        table_name = 'page' and column_name = 'content' and is_nullable = 'NO'
+    )
+    ,'alter table page modify content MEDIUMTEXT null;'
+    ,'select ''column page.content nullable'' _______;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+-- Путь приводится к виду PagePath.normalize: без пробелов по краям, нижний регистр, без завершающих '/', с ведущим '/'.
+-- path_hash считается раньше path: MySQL выполняет присваивания слева направо
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'update page set path_hash = unhex(md5(IF(LEFT(TRIM(TRAILING ''/'' FROM lower(TRIM(path))), 1) = ''/'', TRIM(TRAILING ''/'' FROM lower(TRIM(path))), CONCAT(''/'', TRIM(TRAILING ''/'' FROM lower(TRIM(path))))))), path = IF(LEFT(TRIM(TRAILING ''/'' FROM lower(TRIM(path))), 1) = ''/'', TRIM(TRAILING ''/'' FROM lower(TRIM(path))), CONCAT(''/'', TRIM(TRAILING ''/'' FROM lower(TRIM(path)))));') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+-- Страницы-дубликаты удаляются вместе со строками index, поэтому frequency их лемм уменьшается на число удаляемых страниц.
+-- Число считается заранее: UPDATE с JOIN меняет строку lemma один раз, сколько бы строк index с ней ни совпало
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'update lemma l join (select i.lemma_id, count(distinct i.page_id) pages from `index` i join page p1 on i.page_id = p1.id join page p2 on p1.site_id = p2.site_id and p1.path_hash = p2.path_hash and p1.id > p2.id group by i.lemma_id) d on d.lemma_id = l.id set l.frequency = l.frequency - d.pages;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'delete i from `index` i join page p1 on i.page_id = p1.id join page p2 on p1.site_id = p2.site_id and p1.path_hash = p2.path_hash and p1.id > p2.id;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'delete from lemma where frequency <= 0;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'delete p1 from page p1 join page p2 on p1.site_id = p2.site_id and p1.path_hash = p2.path_hash and p1.id > p2.id;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'uk_page_site_path_hash'
+    )
+    ,'select ''index uk_page_site_path_hash exists'' _______;'
+    ,'create unique index uk_page_site_path_hash on page(site_id, path_hash);') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'site' and index_name like 'idx_site_url_name'
+    )
+    ,'select ''index idx_site_url_name exists'' _______;'
+    ,'create index idx_site_url_name on site(url, name, shadow);') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
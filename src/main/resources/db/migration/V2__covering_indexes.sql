@@ -0,0 +1,27 @@
+-- Покрывающий индекс для загрузки индекса сайта в память и чтения позиций: строки index читаются по lemma_id
+-- в порядке page_id, rank берется из самого индекса. Уникальные ключи lemma(site_id, lemma) и index(page_id, lemma_id)
+-- созданы в V1
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'index' and index_name like 'idx_index_lemma_page_rank'
+    )
+    ,'select ''index idx_index_lemma_page_rank exists'' _______;'
+    ,'create index idx_index_lemma_page_rank on `index`(lemma_id, page_id, `rank`);') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
+
+-- Страницы ищутся по (site_id, path_hash), префиксный индекс по path больше не используется
+select if (
+    exists(
+        select distinct index_name from information_schema.statistics 
+        where table_schema = DATABASE() and 
+        table_name = 'page' and index_name like 'idx_path'
+    )
+    ,'drop index idx_path on page;'
+    ,'select ''index idx_path dropped'' _______;') into @a;
+PREPARE stmt1 FROM @a;
+EXECUTE stmt1;
+DEALLOCATE PREPARE stmt1;
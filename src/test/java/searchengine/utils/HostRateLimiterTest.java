@@ -0,0 +1,64 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstIsAvailableImmediately() {
+        HostRateLimiter limiter = new HostRateLimiter(1, 3, 0);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(SECOND, limiter.tryAcquire(0), SECOND / 1000);
+    }
+
+    @Test
+    void tokensRefillAtConfiguredRate() {
+        HostRateLimiter limiter = new HostRateLimiter(2, 1, 0);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(SECOND / 2, limiter.tryAcquire(0), SECOND / 1000);
+        assertEquals(SECOND / 4, limiter.tryAcquire(SECOND / 4), SECOND / 1000);
+        assertEquals(0, limiter.tryAcquire(SECOND / 2));
+    }
+
+    @Test
+    void refillIsCappedByBurst() {
+        HostRateLimiter limiter = new HostRateLimiter(10, 2, 0);
+        long later = 100 * SECOND;
+        assertEquals(0, limiter.tryAcquire(later));
+        assertEquals(0, limiter.tryAcquire(later));
+        assertTrue(limiter.tryAcquire(later) > 0);
+    }
+
+    @Test
+    void crawlDelaySlowsDownAndDisablesBurst() {
+        HostRateLimiter limiter = new HostRateLimiter(10, 5, 0);
+        limiter.applyCrawlDelay(2, 0);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(2 * SECOND, limiter.tryAcquire(0), SECOND / 1000);
+        assertEquals(SECOND, limiter.tryAcquire(SECOND), SECOND / 1000);
+        assertEquals(0, limiter.tryAcquire(2 * SECOND));
+    }
+
+    @Test
+    void crawlDelayDoesNotSpeedUpSlowerLimit() {
+        HostRateLimiter limiter = new HostRateLimiter(0.25, 1, 0);
+        limiter.applyCrawlDelay(1, 0);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(4 * SECOND, limiter.tryAcquire(0), SECOND / 1000);
+    }
+
+    @Test
+    void nonPositiveCrawlDelayIsIgnored() {
+        HostRateLimiter limiter = new HostRateLimiter(1, 2, 0);
+        limiter.applyCrawlDelay(0, 0);
+        assertEquals(0, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(0));
+    }
+}
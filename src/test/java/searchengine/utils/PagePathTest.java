@@ -0,0 +1,29 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagePathTest {
+
+    @Test
+    void normalizeMatchesStoredPathForm() {
+        assertEquals("/", PagePath.normalize(""));
+        assertEquals("/", PagePath.normalize("/"));
+        assertEquals("/", PagePath.normalize("//"));
+        assertEquals("/catalog", PagePath.normalize(" /Catalog/ "));
+        assertEquals("/catalog", PagePath.normalize("catalog//"));
+        assertEquals("/?a=1", PagePath.normalize("?a=1"));
+        assertEquals("/страница", PagePath.normalize("/СТРАНИЦА"));
+    }
+
+    //Те же значения дает UNHEX(MD5(path)) в MySQL, которым миграция заполняет path_hash
+    @Test
+    void hashIsMd5OfUtf8Bytes() {
+        assertEquals("6666cd76f96956469e7be39d750cc7d9", HexFormat.of().formatHex(PagePath.hash("/")));
+        assertEquals("11442a7eaca410d43a73040ce333252a", HexFormat.of().formatHex(PagePath.hash("/страница")));
+        assertArrayEquals(PagePath.hash("/catalog"), PagePath.hash(PagePath.normalize("/Catalog/")));
+    }
+}
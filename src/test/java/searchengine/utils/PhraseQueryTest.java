@@ -0,0 +1,63 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhraseQueryTest {
+
+    @Test
+    void exactPhraseNeedsAdjacentLemmasInOrder() {
+        PhraseQuery phrase = new PhraseQuery(List.of("поисковый", "движок"), 0);
+        assertTrue(phrase.matches(page("поисковый", 4, "движок", 5)));
+        assertFalse(phrase.matches(page("поисковый", 5, "движок", 4)));
+        assertFalse(phrase.matches(page("поисковый", 4, "движок", 6)));
+    }
+
+    @Test
+    void slopAllowsGapOfUpToNWords() {
+        PhraseQuery phrase = new PhraseQuery(List.of("поисковый", "движок"), 2);
+        assertTrue(phrase.matches(page("поисковый", 4, "движок", 5)));
+        assertTrue(phrase.matches(page("поисковый", 4, "движок", 7)));
+        assertFalse(phrase.matches(page("поисковый", 4, "движок", 8)));
+        assertFalse(phrase.matches(page("поисковый", 4, "движок", 4)));
+    }
+
+    @Test
+    void anyOccurrenceCanStartThePhrase() {
+        PhraseQuery phrase = new PhraseQuery(List.of("быстрый", "поисковый", "движок"), 1);
+        Map<String, Positions> positions = new HashMap<>();
+        positions.put("быстрый", positions(1, 20));
+        positions.put("поисковый", positions(10, 22));
+        positions.put("движок", positions(12, 23));
+        assertTrue(phrase.matches(positions));
+
+        positions.put("движок", positions(12, 25));
+        assertFalse(phrase.matches(positions));
+    }
+
+    @Test
+    void missingLemmaNeverMatches() {
+        PhraseQuery phrase = new PhraseQuery(List.of("поисковый", "движок"), 3);
+        assertFalse(phrase.matches(page("поисковый", 1, "сайт", 2)));
+    }
+
+    private static Map<String, Positions> page(String first, int firstOrdinal, String second, int secondOrdinal) {
+        Map<String, Positions> positions = new HashMap<>();
+        positions.put(first, positions(firstOrdinal));
+        positions.put(second, positions(secondOrdinal));
+        return positions;
+    }
+
+    private static Positions positions(int... ordinals) {
+        Positions.Builder builder = new Positions.Builder();
+        for (int ordinal : ordinals) {
+            builder.add(ordinal, ordinal * 10);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,57 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionsTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        Positions.Builder builder = new Positions.Builder();
+        builder.add(0, 0);
+        builder.add(1, 7);
+        builder.add(130, 1_000);
+        builder.add(20_000, 150_000);
+        Positions positions = builder.build();
+
+        Positions decoded = Positions.decode(positions.encode());
+
+        assertEquals(4, decoded.size());
+        assertArrayEquals(new int[]{0, 1, 130, 20_000}, decoded.ordinals());
+        assertArrayEquals(new int[]{0, 7, 1_000, 150_000}, decoded.offsets());
+    }
+
+    @Test
+    void builderGrowsPastInitialBuffer() {
+        Positions.Builder builder = new Positions.Builder();
+        int[] ordinals = new int[500];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = i * 300;
+            builder.add(ordinals[i], i * 2_000);
+        }
+        Positions decoded = Positions.decode(builder.build().encode());
+        assertEquals(500, decoded.size());
+        assertArrayEquals(ordinals, decoded.ordinals());
+    }
+
+    @Test
+    void emptyPositions() {
+        Positions decoded = Positions.decode(new Positions.Builder().build().encode());
+        assertEquals(0, decoded.size());
+        assertEquals(0, decoded.ordinals().length);
+    }
+
+    @Test
+    void countsAreOccurrencesPerLemma() {
+        Positions.Builder one = new Positions.Builder();
+        one.add(3, 10);
+        Positions.Builder two = new Positions.Builder();
+        two.add(1, 0);
+        two.add(5, 20);
+        assertEquals(Map.of("поиск", 1, "движок", 2),
+                Positions.counts(Map.of("поиск", one.build(), "движок", two.build())));
+    }
+}
@@ -0,0 +1,118 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+
+    @Test
+    void roundTripKeepsPagesAndRanks() {
+        PostingList.Builder builder = new PostingList.Builder();
+        builder.add(1, 3);
+        builder.add(2, 1);
+        builder.add(200, 127);
+        builder.add(70_000, 128);
+        builder.add(Integer.MAX_VALUE, 1_000_000);
+        PostingList list = builder.build();
+
+        assertEquals(5, list.size());
+        assertEquals(List.of(1, 2, 200, 70_000, Integer.MAX_VALUE), pageIds(list));
+        assertEquals(List.of(3, 1, 127, 128, 1_000_000), ranks(list));
+    }
+
+    @Test
+    void smallDeltasTakeTwoBytesPerPage() {
+        PostingList.Builder builder = new PostingList.Builder();
+        for (int pageId = 1; pageId <= 100; pageId++) {
+            builder.add(pageId, 5);
+        }
+        assertEquals(200, builder.build().bytes());
+    }
+
+    @Test
+    void builderRejectsNonIncreasingPageIds() {
+        PostingList.Builder builder = new PostingList.Builder();
+        builder.add(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> builder.add(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> builder.add(4, 1));
+    }
+
+    @Test
+    void emptyBuilderGivesEmptyList() {
+        assertSame(PostingList.EMPTY, new PostingList.Builder().build());
+        assertFalse(PostingList.EMPTY.cursor().next());
+    }
+
+    @Test
+    void mergeAddsReplacesAndRemoves() {
+        PostingList list = listOf(1, 10, 3, 30, 5, 50, 7, 70);
+        TreeMap<Integer, Integer> changes = new TreeMap<>();
+        changes.put(0, 1);
+        changes.put(3, 0);
+        changes.put(4, 40);
+        changes.put(5, 55);
+        changes.put(7, -1);
+        changes.put(9, 90);
+        changes.put(11, 0);
+
+        PostingList merged = list.merge(changes);
+
+        assertEquals(List.of(0, 1, 4, 5, 9), pageIds(merged));
+        assertEquals(List.of(1, 10, 40, 55, 90), ranks(merged));
+        assertEquals(5, merged.size());
+        assertEquals(List.of(1, 3, 5, 7), pageIds(list));
+    }
+
+    @Test
+    void mergeRemovingEverythingGivesEmptyList() {
+        PostingList list = listOf(2, 1, 4, 1);
+        TreeMap<Integer, Integer> changes = new TreeMap<>();
+        changes.put(2, 0);
+        changes.put(4, 0);
+        assertSame(PostingList.EMPTY, list.merge(changes));
+    }
+
+    @Test
+    void advanceSkipsToFirstPageNotBelowTarget() {
+        PostingList.Cursor cursor = listOf(2, 1, 4, 1, 8, 1, 16, 1).cursor();
+        assertTrue(cursor.advance(3));
+        assertEquals(4, cursor.getPageId());
+        assertTrue(cursor.advance(4));
+        assertEquals(4, cursor.getPageId());
+        assertTrue(cursor.advance(16));
+        assertEquals(16, cursor.getPageId());
+        assertFalse(cursor.advance(17));
+        assertFalse(cursor.advance(1));
+    }
+
+    private static PostingList listOf(int... pagesAndRanks) {
+        PostingList.Builder builder = new PostingList.Builder();
+        for (int i = 0; i < pagesAndRanks.length; i += 2) {
+            builder.add(pagesAndRanks[i], pagesAndRanks[i + 1]);
+        }
+        return builder.build();
+    }
+
+    private static List<Integer> pageIds(PostingList list) {
+        List<Integer> pageIds = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            pageIds.add(cursor.getPageId());
+        }
+        return pageIds;
+    }
+
+    private static List<Integer> ranks(PostingList list) {
+        List<Integer> ranks = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            ranks.add(cursor.getRank());
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,80 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SiteIndexTest {
+
+    @Test
+    void changesAreVisibleAfterCompaction() {
+        SiteIndex index = loaded();
+        for (int pageId = 1; pageId <= 1_000; pageId++) {
+            index.add(pageId, "поиск", pageId % 7 + 1);
+        }
+        for (int pageId = 2; pageId <= 1_000; pageId += 2) {
+            index.remove(pageId, "поиск");
+        }
+        index.add(4, "поиск", 9);
+
+        List<Integer> pageIds = pageIds(index.postings("поиск"));
+        assertEquals(501, pageIds.size());
+        assertTrue(pageIds.contains(4));
+        assertFalse(pageIds.contains(6));
+        assertEquals(Map.of("поиск", 501, "движок", 0), index.frequencies(List.of("поиск", "движок")));
+    }
+
+    @Test
+    void removeDuringLoadIsKeptOverLoadedList() {
+        SiteIndex index = new SiteIndex();
+        index.remove(2, "поиск");
+        index.setLoaded("поиск", list(1, 5, 2, 5, 3, 5));
+        index.markLoaded();
+
+        assertEquals(List.of(1, 3), pageIds(index.postings("поиск")));
+    }
+
+    @Test
+    void matchIntersectsAndSumsRanks() {
+        SiteIndex index = loaded();
+        index.add(1, "поиск", 2);
+        index.add(2, "поиск", 3);
+        index.add(3, "поиск", 1);
+        index.add(2, "движок", 4);
+        index.add(3, "движок", 6);
+
+        SiteIndex.Matches matches = index.match(List.of("движок", "поиск"));
+
+        assertArrayEquals(new int[]{2, 3}, matches.pageIds());
+        assertArrayEquals(new int[]{7, 7}, matches.ranks());
+        assertEquals(7, matches.maxRank());
+        assertArrayEquals(new int[]{0}, matches.top(1));
+    }
+
+    private static SiteIndex loaded() {
+        SiteIndex index = new SiteIndex();
+        index.markLoaded();
+        return index;
+    }
+
+    private static PostingList list(int... pagesAndRanks) {
+        PostingList.Builder builder = new PostingList.Builder();
+        for (int i = 0; i < pagesAndRanks.length; i += 2) {
+            builder.add(pagesAndRanks[i], pagesAndRanks[i + 1]);
+        }
+        return builder.build();
+    }
+
+    private static List<Integer> pageIds(PostingList list) {
+        List<Integer> pageIds = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            pageIds.add(cursor.getPageId());
+        }
+        return pageIds;
+    }
+}
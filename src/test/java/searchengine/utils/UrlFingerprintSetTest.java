@@ -0,0 +1,62 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlFingerprintSetTest {
+
+    @Test
+    void addReportsOnlyFirstOccurrence() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        long fingerprint = UrlFingerprintSet.fingerprint("/catalog");
+        assertFalse(set.contains(fingerprint));
+        assertTrue(set.add(fingerprint));
+        assertFalse(set.add(fingerprint));
+        assertTrue(set.contains(fingerprint));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void zeroFingerprintIsStored() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertArrayEquals(new long[]{0}, set.toArray());
+    }
+
+    @Test
+    void segmentsGrowAndToArrayReturnsEveryFingerprint() {
+        UrlFingerprintSet set = new UrlFingerprintSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            long fingerprint = UrlFingerprintSet.fingerprint("/page/" + i);
+            expected.add(fingerprint);
+            assertTrue(set.add(fingerprint));
+        }
+        assertTrue(set.add(0));
+        expected.add(0L);
+
+        assertEquals(expected.size(), set.size());
+        for (long fingerprint : expected) {
+            assertTrue(set.contains(fingerprint));
+        }
+        long[] array = set.toArray();
+        assertEquals(expected.size(), array.length);
+        assertEquals(expected, new HashSet<>(Arrays.stream(array).boxed().toList()));
+    }
+
+    @Test
+    void stringAndByteFingerprintsAgreeForAscii() {
+        String path = "/news?page=2";
+        assertEquals(UrlFingerprintSet.fingerprint(path),
+                UrlFingerprintSet.fingerprint(path.getBytes(StandardCharsets.US_ASCII)));
+        assertNotEquals(UrlFingerprintSet.fingerprint("/a"), UrlFingerprintSet.fingerprint("/b"));
+    }
+}